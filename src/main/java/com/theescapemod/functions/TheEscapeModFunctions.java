@@ -11,12 +11,14 @@ import com.theescapemod.functions.dimension.DimensionManager;
 import com.theescapemod.functions.dimension.DimensionConfig;
 import com.theescapemod.functions.world.WorldBorderManager;
 import com.theescapemod.functions.world.BarrierManager;
+import com.theescapemod.functions.world.VirtualBarrierManager;
 import com.theescapemod.functions.schematic.SchematicManager;
 import com.theescapemod.functions.communication.CommunicationLoader;
 import com.theescapemod.functions.screens.ScreenLoader;
 import com.theescapemod.functions.screens.ScreenDisplayHandler;
 import com.theescapemod.functions.item.ModItems;
 import com.theescapemod.functions.item.ModCreativeTabs;
+import com.theescapemod.functions.world.ModChunkGenerators;
 import com.theescapemod.functions.network.ModNetworking;
 
 import java.util.Map;
@@ -58,6 +60,7 @@ public class TheEscapeModFunctions {
         // Register items and creative tabs
         ModItems.register(modEventBus);
         ModCreativeTabs.register(modEventBus);
+        ModChunkGenerators.register(modEventBus);
 
         // Register ourselves for server and other game events we are interested in.
         NeoForge.EVENT_BUS.register(this);
@@ -100,6 +103,9 @@ public class TheEscapeModFunctions {
         DimensionManager.loadDimensionConfigs();
         
         DimensionChecker.checkAllDimensions(event.getServer());
+        
+        // Start decoding schematic imports now so they are ready once the worlds are
+        SchematicManager.prefetchImports(event.getServer(), false);
     }
 
     @SubscribeEvent
@@ -108,12 +114,14 @@ public class TheEscapeModFunctions {
         LOGGER.info("The Escape Mod Functions - Server Started, applying world borders and barriers");
         Map<String, DimensionConfig> loadedDimensions = DimensionManager.getLoadedDimensions();
         WorldBorderManager.applyWorldBorders(event.getServer(), loadedDimensions);
-        BarrierManager.placeAllBarriers(event.getServer(), loadedDimensions);
+        // Barrier columns are stamped into perimeter chunks as they generate or load
+        BarrierManager.enableLazyPlacement(event.getServer(), loadedDimensions);
+        VirtualBarrierManager.enableVirtualBarriers(event.getServer(), loadedDimensions);
         
-        // Execute schematic imports
+        // Queue schematic imports; they paste over the following ticks
         LOGGER.info("Starting schematic imports...");
         SchematicManager.executeImports(event.getServer());
-        LOGGER.info("Finished schematic imports.");
+        LOGGER.info("Queued schematic imports.");
     }
 
     @SubscribeEvent
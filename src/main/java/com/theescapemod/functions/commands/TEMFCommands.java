@@ -1,6 +1,7 @@
 package com.theescapemod.functions.commands;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.theescapemod.functions.screens.ScreenLoader;
 import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
@@ -15,7 +16,11 @@ import com.theescapemod.functions.dimension.DimensionConfig;
 import com.theescapemod.functions.dimension.DimensionManager;
 import com.theescapemod.functions.world.WorldBorderManager;
 import com.theescapemod.functions.world.BarrierManager;
+import com.theescapemod.functions.world.WorldEditJob;
+import com.theescapemod.functions.world.WorldEditJobScheduler;
 import com.theescapemod.functions.schematic.SchematicManager;
+import com.theescapemod.functions.schematic.SchematicJob;
+import com.theescapemod.functions.schematic.SchematicProbe;
 import com.theescapemod.functions.communication.CommunicationLoader;
 import com.theescapemod.functions.communication.SceneManager;
 import com.theescapemod.functions.item.ModItems;
@@ -25,7 +30,11 @@ import net.minecraft.network.chat.Component;
 import com.theescapemod.functions.network.ScreenDisplaySyncPacket;
 import net.neoforged.neoforge.network.PacketDistributor;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TEMFCommands {
     
@@ -43,7 +52,11 @@ public class TEMFCommands {
                         .then(Commands.literal("remove")
                                 .executes(TEMFCommands::removeBarriers))
                         .then(Commands.literal("refresh")
-                                .executes(TEMFCommands::refreshBarriers)))
+                                .executes(TEMFCommands::refreshBarriers)
+                                .then(Commands.literal("status")
+                                        .executes(TEMFCommands::barrierRefreshStatus))
+                                .then(Commands.literal("cancel")
+                                        .executes(TEMFCommands::cancelBarrierRefresh))))
                 .then(Commands.literal("check")
                         .then(Commands.argument("dimension", StringArgumentType.string())
                                 .executes(TEMFCommands::checkDimension)))
@@ -54,7 +67,17 @@ public class TEMFCommands {
                         .then(Commands.literal("reload")
                                 .executes(TEMFCommands::reloadSchematics))
                         .then(Commands.literal("import")
-                                .executes(TEMFCommands::importSchematics)))
+                                .executes(context -> importSchematics(context, false))
+                                .then(Commands.literal("force")
+                                        .executes(context -> importSchematics(context, true))))
+                        .then(Commands.literal("validate")
+                                .executes(TEMFCommands::validateSchematics))
+                        .then(Commands.literal("jobs")
+                                .executes(TEMFCommands::listPasteJobs)
+                                .then(Commands.literal("cancel")
+                                        .executes(TEMFCommands::cancelPasteJobs)
+                                        .then(Commands.argument("id", IntegerArgumentType.integer(1))
+                                                .executes(TEMFCommands::cancelPasteJob)))))
                 .then(Commands.literal("communication")
                         .executes(TEMFCommands::testCommunication)
                         .then(Commands.literal("reload")
@@ -125,6 +148,7 @@ public class TEMFCommands {
         context.getSource().sendSuccess(() -> Component.literal("Dimension: " + dimensionName), false);
         context.getSource().sendSuccess(() -> Component.literal("- Configured border: " + config.getWorldBorder()), false);
         context.getSource().sendSuccess(() -> Component.literal("- Type: " + config.getType()), false);
+        context.getSource().sendSuccess(() -> Component.literal("- Barrier mode: " + config.getBarrierMode()), false);
         context.getSource().sendSuccess(() -> Component.literal("- Status: " + (exists ? "§aLoaded" : "§cNot loaded")), false);
         if (exists) {
             context.getSource().sendSuccess(() -> Component.literal("- Current border: " + (int)currentBorder), false);
@@ -214,41 +238,143 @@ public class TEMFCommands {
     }
     
     private static int refreshBarriers(CommandContext<CommandSourceStack> context) {
+        if (!BarrierManager.getRefreshJobs().isEmpty()) {
+            // A refresh is already running - report on it instead of starting over
+            return barrierRefreshStatus(context);
+        }
+        
+        CommandSourceStack source = context.getSource();
         Map<String, DimensionConfig> dimensions = DimensionManager.getLoadedDimensions();
-        int totalProcessed = 0;
+        int jobsStarted = 0;
         
         for (DimensionConfig config : dimensions.values()) {
-            if (WorldBorderManager.dimensionExists(context.getSource().getServer(), config.getName())) {
-                // Refresh will handle both removal and placement internally
-                int placed = BarrierManager.refreshBarriers(context.getSource().getServer(), config);
-                totalProcessed += placed;
-                final int placedCount = placed; // Make variable effectively final for lambda
-                context.getSource().sendSuccess(() -> Component.literal("Refreshed barriers in " + config.getName() + 
-                        " (placed: " + placedCount + " blocks)"), false);
+            if (WorldBorderManager.dimensionExists(source.getServer(), config.getName())) {
+                // Only the difference between the stored wall and the configured one is touched
+                int jobId = BarrierManager.refreshBarriers(source.getServer(), config,
+                        message -> source.sendSuccess(() -> Component.literal(message), false));
+                if (jobId >= 0) {
+                    jobsStarted++;
+                    source.sendSuccess(() -> Component.literal("Started barrier refresh #" + jobId + " in " + config.getName()), false);
+                } else {
+                    source.sendSuccess(() -> Component.literal("Barriers in " + config.getName() + " are already up to date"), false);
+                }
             }
         }
         
-        context.getSource().sendSuccess(() -> Component.literal("Refreshed barriers for all dimensions"), true);
-        return totalProcessed;
+        final int finalStarted = jobsStarted; // Make variable effectively final for lambda
+        source.sendSuccess(() -> Component.literal("Started " + finalStarted + " barrier refresh jobs. Use /temf barriers refresh status or cancel"), true);
+        return jobsStarted;
+    }
+    
+    private static int barrierRefreshStatus(CommandContext<CommandSourceStack> context) {
+        Map<String, Integer> jobs = BarrierManager.getRefreshJobs();
+        
+        if (jobs.isEmpty()) {
+            context.getSource().sendSuccess(() -> Component.literal("No barrier refresh is running"), false);
+            return 0;
+        }
+        
+        for (Map.Entry<String, Integer> entry : jobs.entrySet()) {
+            WorldEditJob job = WorldEditJobScheduler.getJob(entry.getValue());
+            if (job != null) {
+                int percent = (int) (job.getProgress() * 100);
+                context.getSource().sendSuccess(() -> Component.literal("Barrier refresh #" + entry.getValue() + " in " + entry.getKey() + ": " + percent + "%"), false);
+            }
+        }
+        return jobs.size();
+    }
+    
+    private static int cancelBarrierRefresh(CommandContext<CommandSourceStack> context) {
+        Map<String, Integer> jobs = BarrierManager.getRefreshJobs();
+        int cancelled = 0;
+        
+        for (Integer jobId : jobs.values()) {
+            if (WorldEditJobScheduler.cancel(jobId)) {
+                cancelled++;
+            }
+        }
+        
+        final int finalCancelled = cancelled; // Make variable effectively final for lambda
+        context.getSource().sendSuccess(() -> Component.literal("Cancelled " + finalCancelled + " barrier refresh jobs"), true);
+        return cancelled;
     }
     
     private static int listSchematics(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
         var schematics = SchematicManager.getAvailableSchematics();
+        var config = SchematicManager.getConfig();
+        int enabledImports = config != null ? config.getEnabledImports().size() : -1;
         
         if (schematics.isEmpty()) {
-            context.getSource().sendSuccess(() -> Component.literal("No schematic files found in config/temf/schematics/"), false);
-        } else {
-            context.getSource().sendSuccess(() -> Component.literal("Found " + schematics.size() + " schematic files:"), false);
-            for (String schematic : schematics) {
-                context.getSource().sendSuccess(() -> Component.literal("  " + schematic), false);
+            source.sendSuccess(() -> Component.literal("No schematic files found in config/temf/schematics/"), false);
+            sendEnabledImports(source, enabledImports);
+            return 0;
+        }
+        
+        // Probing reads the files, so it happens off the server thread and replies when done
+        SchematicManager.probeSchematicsAsync(schematics).whenComplete((infos, error) -> source.getServer().execute(() -> {
+            if (error != null) {
+                source.sendFailure(Component.literal("Failed to read schematics: " + error.getMessage()));
+                return;
+            }
+            source.sendSuccess(() -> Component.literal("Found " + infos.size() + " schematic files:"), false);
+            for (Map.Entry<String, SchematicProbe.Info> entry : infos.entrySet()) {
+                String details = entry.getValue() != null ? " - " + entry.getValue().describe() : "";
+                source.sendSuccess(() -> Component.literal("  " + entry.getKey() + details), false);
             }
+            sendEnabledImports(source, enabledImports);
+        }));
+        
+        return schematics.size();
+    }
+    
+    private static void sendEnabledImports(CommandSourceStack source, int enabledImports) {
+        if (enabledImports >= 0) {
+            source.sendSuccess(() -> Component.literal("Configured imports: " + enabledImports + " enabled"), false);
         }
+    }
+    
+    private static int validateSchematics(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        var schematics = SchematicManager.getAvailableSchematics();
         
+        // Imports that point at files which don't exist or can't be read
+        List<String> importFiles = new ArrayList<>();
         var config = SchematicManager.getConfig();
         if (config != null) {
-            var enabledImports = config.getEnabledImports();
-            context.getSource().sendSuccess(() -> Component.literal("Configured imports: " + enabledImports.size() + " enabled"), false);
+            for (var schematicImport : config.getEnabledImports()) {
+                importFiles.add(schematicImport.filename);
+            }
         }
+        List<String> toProbe = new ArrayList<>(schematics);
+        toProbe.addAll(importFiles);
+        
+        SchematicManager.probeSchematicsAsync(toProbe).whenComplete((infos, error) -> source.getServer().execute(() -> {
+            if (error != null) {
+                source.sendFailure(Component.literal("Failed to read schematics: " + error.getMessage()));
+                return;
+            }
+            
+            int invalid = 0;
+            for (String schematic : schematics) {
+                SchematicProbe.Info info = infos.get(schematic);
+                if (info == null || !info.isValid()) {
+                    invalid++;
+                    String reason = info != null ? info.describe() : "missing";
+                    source.sendFailure(Component.literal("  " + schematic + " - " + reason));
+                }
+            }
+            for (String filename : importFiles) {
+                if (infos.get(filename) == null) {
+                    invalid++;
+                    source.sendFailure(Component.literal("  Import references missing file: " + filename));
+                }
+            }
+            
+            final int finalInvalid = invalid; // Make variable effectively final for lambda
+            source.sendSuccess(() -> Component.literal(
+                "Checked " + schematics.size() + " schematic files: " + finalInvalid + " problems"), false);
+        }));
         
         return schematics.size();
     }
@@ -259,11 +385,72 @@ public class TEMFCommands {
         return 1;
     }
     
-    private static int importSchematics(CommandContext<CommandSourceStack> context) {
-        SchematicManager.executeImports(context.getSource().getServer());
-        context.getSource().sendSuccess(() -> Component.literal("Executed schematic imports"), true);
+    private static int importSchematics(CommandContext<CommandSourceStack> context, boolean force) {
+        SchematicManager.executeImports(context.getSource().getServer(), force);
+        int queued = SchematicManager.getPasteJobs().size();
+        context.getSource().sendSuccess(() -> Component.literal("Queued " + queued + " schematic imports. Use /temf schematics jobs to follow them"), true);
+        return queued;
+    }
+    
+    private static int listPasteJobs(CommandContext<CommandSourceStack> context) {
+        Map<String, Integer> jobs = SchematicManager.getPasteJobs();
+        
+        if (jobs.isEmpty()) {
+            context.getSource().sendSuccess(() -> Component.literal("No schematic paste is running"), false);
+            return 0;
+        }
+        
+        // Imports pasted together share one job
+        Set<Integer> jobIds = new LinkedHashSet<>(jobs.values());
+        for (Integer jobId : jobIds) {
+            if (WorldEditJobScheduler.getJob(jobId) instanceof SchematicJob job) {
+                String status;
+                if (job.isDecoding()) {
+                    status = "decoding";
+                } else if (job.isLoadingChunks()) {
+                    status = "loading chunks " + job.getPreloader().getLoadedCount() + "/" + job.getPreloader().getChunkCount();
+                } else {
+                    long eta = job.getEtaSeconds();
+                    status = (int) (job.getProgress() * 100) + "%" + (eta >= 0 ? ", about " + formatDuration(eta) + " left" : "");
+                }
+                context.getSource().sendSuccess(() -> Component.literal("#" + jobId + " " + job.getDescription() + ": " + status), false);
+            }
+        }
+        return jobIds.size();
+    }
+    
+    private static int cancelPasteJobs(CommandContext<CommandSourceStack> context) {
+        int cancelled = 0;
+        
+        for (Integer jobId : SchematicManager.getPasteJobs().values()) {
+            if (WorldEditJobScheduler.cancel(jobId)) {
+                cancelled++;
+            }
+        }
+        
+        final int finalCancelled = cancelled; // Make variable effectively final for lambda
+        context.getSource().sendSuccess(() -> Component.literal("Cancelled " + finalCancelled + " schematic pastes"), true);
+        return cancelled;
+    }
+    
+    private static int cancelPasteJob(CommandContext<CommandSourceStack> context) {
+        int jobId = IntegerArgumentType.getInteger(context, "id");
+        
+        if (!SchematicManager.getPasteJobs().containsValue(jobId) || !WorldEditJobScheduler.cancel(jobId)) {
+            context.getSource().sendFailure(Component.literal("No schematic paste with id #" + jobId));
+            return 0;
+        }
+        
+        context.getSource().sendSuccess(() -> Component.literal("Cancelled schematic paste #" + jobId), true);
         return 1;
     }
+    
+    private static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+        }
+        return seconds >= 60 ? String.format("%dm %02ds", seconds / 60, seconds % 60) : seconds + "s";
+    }
 
     private static int testCommunication(CommandContext<CommandSourceStack> context) {
         var config = CommunicationLoader.getConfig();
@@ -13,5 +13,13 @@ public class TEMFConfig {
             .comment("Default world border size for dimensions when not specified")
             .defineInRange("defaultWorldBorderSize", 1000, 100, 100000);
 
+    public static final ModConfigSpec.IntValue JOB_TICK_BUDGET_MS = BUILDER
+            .comment("Milliseconds per server tick that background world edit jobs (barrier refreshes, schematic pastes) may use")
+            .defineInRange("jobTickBudgetMs", 10, 1, 50);
+
+    public static final ModConfigSpec.IntValue SCHEMATIC_CACHE_MB = BUILDER
+            .comment("Megabytes of heap that decoded schematics may keep using after a paste, so importing them again skips decoding")
+            .defineInRange("schematicCacheMb", 256, 0, 65536);
+
     public static final ModConfigSpec SPEC = BUILDER.build();
 }
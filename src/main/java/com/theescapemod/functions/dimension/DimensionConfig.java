@@ -1,9 +1,18 @@
 package com.theescapemod.functions.dimension;
 
 public class DimensionConfig {
+    public static final String BARRIER_MODE_PHYSICAL = "physical";
+    public static final String BARRIER_MODE_VIRTUAL = "virtual";
+    public static final String BARRIER_SHAPE_SQUARE = "square";
+    public static final String BARRIER_SHAPE_CIRCLE = "circle";
+    public static final String BARRIER_SHAPE_POLYGON = "polygon";
+
     private String name;
     private int worldBorder;
     private String type;
+    private String barrierMode;
+    private String barrierShape;
+    private int[][] barrierPolygon;
 
     public DimensionConfig() {
         // Default constructor for JSON deserialization
@@ -39,10 +48,71 @@ public class DimensionConfig {
         this.type = type;
     }
 
+    /**
+     * How the perimeter is enforced: "physical" barrier blocks (the default)
+     * or a "virtual" wall that clamps movement without placing any blocks.
+     */
+    public String getBarrierMode() {
+        return barrierMode != null ? barrierMode : BARRIER_MODE_PHYSICAL;
+    }
+
+    public void setBarrierMode(String barrierMode) {
+        this.barrierMode = barrierMode;
+    }
+
+    public boolean isVirtualBarrier() {
+        return BARRIER_MODE_VIRTUAL.equals(getBarrierMode());
+    }
+
+    /**
+     * Outline of the perimeter: "square" (the default) or "circle", both sized by the
+     * world border, or "polygon" following {@link #getBarrierPolygon()}.
+     */
+    public String getBarrierShape() {
+        return barrierShape != null ? barrierShape : BARRIER_SHAPE_SQUARE;
+    }
+
+    public void setBarrierShape(String barrierShape) {
+        this.barrierShape = barrierShape;
+    }
+
+    /**
+     * Polygon vertices as [x, z] pairs, used when the shape is "polygon".
+     */
+    public int[][] getBarrierPolygon() {
+        return barrierPolygon;
+    }
+
+    public void setBarrierPolygon(int[][] barrierPolygon) {
+        this.barrierPolygon = barrierPolygon;
+    }
+
+    private boolean isShapeValid() {
+        switch (getBarrierShape()) {
+            case BARRIER_SHAPE_SQUARE:
+            case BARRIER_SHAPE_CIRCLE:
+                return true;
+            case BARRIER_SHAPE_POLYGON:
+                if (barrierPolygon == null || barrierPolygon.length < 3) {
+                    return false;
+                }
+                for (int[] point : barrierPolygon) {
+                    if (point == null || point.length != 2) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public boolean isValid() {
         return name != null && !name.isEmpty() && 
                worldBorder > 0 && 
-               type != null && !type.isEmpty();
+               type != null && !type.isEmpty() &&
+               (BARRIER_MODE_PHYSICAL.equals(getBarrierMode()) || BARRIER_MODE_VIRTUAL.equals(getBarrierMode())) &&
+               isShapeValid();
     }
 
     @Override
@@ -51,6 +121,8 @@ public class DimensionConfig {
                 "name='" + name + '\'' +
                 ", worldBorder=" + worldBorder +
                 ", type='" + type + '\'' +
+                ", barrierMode='" + getBarrierMode() + '\'' +
+                ", barrierShape='" + getBarrierShape() + '\'' +
                 '}';
     }
 }
@@ -8,15 +8,12 @@ import net.minecraft.tags.BlockTags;
 import net.minecraft.util.valueproviders.UniformInt;
 import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.dimension.LevelStem;
-import net.minecraft.world.level.levelgen.FlatLevelSource;
 import net.minecraft.world.level.biome.Biomes;
-import net.minecraft.world.level.levelgen.flat.FlatLevelGeneratorSettings;
 import net.minecraft.core.HolderGetter;
 import net.minecraft.world.level.biome.Biome;
 import com.theescapemod.functions.TheEscapeModFunctions;
+import com.theescapemod.functions.world.VoidChunkGenerator;
 import java.util.OptionalLong;
-import java.util.Optional;
-import java.util.List;
 
 /**
  * Handles code-based dimension registration using bootstrap methods.
@@ -59,17 +56,10 @@ public class TEMFDimensions {
     public static void bootstrapLevelStems(BootstrapContext<LevelStem> context) {
         HolderGetter<Biome> biomeGetter = context.lookup(Registries.BIOME);
         
-        // Create flat settings for a completely empty world (void)
-        FlatLevelGeneratorSettings voidSettings = new FlatLevelGeneratorSettings(
-                Optional.empty(), // No structure overrides
-                biomeGetter.getOrThrow(Biomes.THE_VOID), // Use void biome
-                List.of() // Empty layers - no blocks at all
-        );
-        
-        // Register void_spawn dimension with flat generator (empty = void)
+        // Register void_spawn dimension with the void generator, which also places schematic imports as chunks generate
         context.register(VOID_SPAWN_LEVEL_STEM, new LevelStem(
                 context.lookup(Registries.DIMENSION_TYPE).getOrThrow(VOID_SPAWN_DIMENSION_TYPE),
-                new FlatLevelSource(voidSettings)
+                new VoidChunkGenerator(biomeGetter.getOrThrow(Biomes.THE_VOID))
         ));
     }
 }
@@ -0,0 +1,69 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.logging.LogUtils;
+import net.minecraft.commands.arguments.blocks.BlockStateParser;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache from block state strings (like "minecraft:oak_stairs[facing=east,half=top]")
+ * to block states. Each distinct string is parsed once with the vanilla block state parser,
+ * so palettes shared between schematics resolve with a single lookup. Safe to use from
+ * any thread.
+ */
+public final class BlockStateCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private static final Map<String, BlockState> CACHE = new ConcurrentHashMap<>();
+    
+    private BlockStateCache() {
+    }
+    
+    /**
+     * Resolves a block state string, applying its properties.
+     * Unknown properties fall back to the block's default state and unknown blocks to air,
+     * with a warning logged the first time each string is seen.
+     */
+    public static BlockState get(String blockStateString) {
+        BlockState cached = CACHE.get(blockStateString);
+        if (cached != null) {
+            return cached;
+        }
+        return CACHE.computeIfAbsent(blockStateString, BlockStateCache::parse);
+    }
+    
+    public static int size() {
+        return CACHE.size();
+    }
+    
+    private static BlockState parse(String blockStateString) {
+        try {
+            return BlockStateParser.parseForBlock(BuiltInRegistries.BLOCK.asLookup(), blockStateString, false).blockState();
+        } catch (CommandSyntaxException e) {
+            // Often a property from another game version; keep the block if it still exists
+            BlockState fallback = parseBlockOnly(blockStateString);
+            LOGGER.warn("Failed to parse block state '{}', using {}: {}", blockStateString, fallback, e.getMessage());
+            return fallback;
+        }
+    }
+    
+    private static BlockState parseBlockOnly(String blockStateString) {
+        int bracketIndex = blockStateString.indexOf('[');
+        String blockId = bracketIndex >= 0 ? blockStateString.substring(0, bracketIndex) : blockStateString;
+        ResourceLocation location = ResourceLocation.tryParse(blockId.trim());
+        if (location == null) {
+            return Blocks.AIR.defaultBlockState();
+        }
+        return BuiltInRegistries.BLOCK.getOptional(location)
+            .map(Block::defaultBlockState)
+            .orElse(Blocks.AIR.defaultBlockState());
+    }
+}
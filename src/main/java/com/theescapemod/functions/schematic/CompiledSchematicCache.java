@@ -0,0 +1,387 @@
+package com.theescapemod.functions.schematic;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.commands.arguments.blocks.BlockStateParser;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.block.state.BlockState;
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of schematics that have already been read and resolved.
+ * Each schematic is compiled once into {@code config/temf/schematic_cache/<sha256>.temfc},
+ * holding its block state palette and the packed section data. Later loads map that file
+ * and copy the sections out, skipping gzip and the NBT tree entirely.
+ * <p>
+ * {@code index.json} remembers the size, modification time and hash of each source file,
+ * so unchanged files are matched without being hashed again. A file whose timestamp
+ * changed but whose content didn't still finds its entry by hash.
+ */
+public class CompiledSchematicCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    
+    private static final String CACHE_DIR = "config/temf/schematic_cache";
+    private static final String INDEX_FILE = "index.json";
+    private static final String EXTENSION = ".temfc";
+    
+    private static final int MAGIC = 0x54454D43; // "TEMC"
+    private static final int FORMAT_VERSION = 1;
+    
+    private static Map<String, IndexEntry> index;
+    
+    /**
+     * Loads a schematic through the cache, compiling it on a miss.
+     */
+    public static SimpleSchematic load(File schematicFile) throws IOException {
+        return load(schematicFile, 0);
+    }
+    
+    /**
+     * Loads a schematic through the cache, using the given palette of multi-palette structure files.
+     * Each palette is compiled into its own entry.
+     */
+    public static SimpleSchematic load(File schematicFile, int structurePalette) throws IOException {
+        SimpleSchematic schematic = loadCached(schematicFile, structurePalette);
+        return schematic != null ? schematic : compile(schematicFile, structurePalette);
+    }
+    
+    /**
+     * Loads a schematic from its compiled entry only.
+     * @return the schematic, or null if it hasn't been compiled yet
+     */
+    public static SimpleSchematic loadCached(File schematicFile, int structurePalette) throws IOException {
+        Path compiled = getCompiledPath(schematicFile, structurePalette);
+        if (!Files.exists(compiled)) {
+            return null;
+        }
+        
+        try {
+            SimpleSchematic schematic = readCompiled(compiled);
+            LOGGER.info("Loaded {} from compiled cache ({} blocks)", schematicFile.getName(), schematic.getBlockCount());
+            return schematic;
+        } catch (IOException e) {
+            LOGGER.warn("Compiled cache entry for {} is unreadable, recompiling: {}", schematicFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Reads a schematic from its source file and stores the compiled result.
+     */
+    public static SimpleSchematic compile(File schematicFile, int structurePalette) throws IOException {
+        Path compiled = getCompiledPath(schematicFile, structurePalette);
+        SimpleSchematic schematic = SchematicReader.readSchematic(schematicFile, structurePalette);
+        try {
+            writeCompiled(schematic, compiled);
+            LOGGER.info("Compiled {} into the schematic cache", schematicFile.getName());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write compiled cache entry for {}: {}", schematicFile.getName(), e.getMessage());
+        }
+        return schematic;
+    }
+    
+    /**
+     * Returns the content hash of a schematic file, reusing the indexed one when
+     * the file's size and modification time haven't changed.
+     */
+    public static String getHash(File schematicFile) throws IOException {
+        String key = schematicFile.getName();
+        long size = schematicFile.length();
+        long modified = schematicFile.lastModified();
+        
+        synchronized (CompiledSchematicCache.class) {
+            IndexEntry entry = getIndex().get(key);
+            if (entry != null && entry.size == size && entry.modified == modified && entry.hash != null) {
+                return entry.hash;
+            }
+        }
+        
+        // Hash outside the lock so several files can be hashed in parallel
+        IndexEntry entry = new IndexEntry();
+        entry.size = size;
+        entry.modified = modified;
+        entry.hash = hashFile(schematicFile.toPath());
+        
+        synchronized (CompiledSchematicCache.class) {
+            getIndex().put(key, entry);
+            saveIndex();
+        }
+        return entry.hash;
+    }
+    
+    /**
+     * Reads a compiled schematic by content hash, or returns null if none is cached.
+     */
+    public static SimpleSchematic readByHash(String hash) {
+        return readByHash(hash, 0);
+    }
+    
+    /**
+     * Reads the compiled entry of one palette of a file by the file's content hash.
+     * @return the schematic, or null if that version was never compiled or has been removed
+     */
+    public static SimpleSchematic readByHash(String hash, int structurePalette) {
+        Path compiled = getCompiledPath(hash, structurePalette);
+        if (!Files.exists(compiled)) {
+            return null;
+        }
+        try {
+            return readCompiled(compiled);
+        } catch (IOException e) {
+            LOGGER.warn("Compiled cache entry {} is unreadable: {}", compiled.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Checks whether a version of a file is still compiled, without reading it.
+     */
+    public static boolean isCompiled(String hash, int structurePalette) {
+        return Files.exists(getCompiledPath(hash, structurePalette));
+    }
+    
+    /**
+     * Forgets the index and deletes every compiled file.
+     */
+    public static synchronized void clear() throws IOException {
+        index = new HashMap<>();
+        File[] files = new File(CACHE_DIR).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+    
+    private static Path getCompiledPath(File schematicFile, int structurePalette) throws IOException {
+        return getCompiledPath(getHash(schematicFile), structurePalette);
+    }
+    
+    private static Path getCompiledPath(String hash, int structurePalette) {
+        return getCompiledPath(structurePalette > 0 ? hash + "_p" + structurePalette : hash);
+    }
+    
+    private static Path getCompiledPath(String hash) {
+        return Path.of(CACHE_DIR, hash + EXTENSION);
+    }
+    
+    private static String hashFile(Path path) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(path)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+    
+    private static Map<String, IndexEntry> getIndex() {
+        if (index != null) {
+            return index;
+        }
+        
+        index = new HashMap<>();
+        Path indexPath = Path.of(CACHE_DIR, INDEX_FILE);
+        if (Files.exists(indexPath)) {
+            try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+                Map<String, IndexEntry> loaded = GSON.fromJson(reader, new TypeToken<Map<String, IndexEntry>>() {}.getType());
+                if (loaded != null) {
+                    index.putAll(loaded);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Failed to read schematic cache index, starting fresh: {}", e.getMessage());
+            }
+        }
+        return index;
+    }
+    
+    private static void saveIndex() {
+        try {
+            Files.createDirectories(Path.of(CACHE_DIR));
+            Path indexPath = Path.of(CACHE_DIR, INDEX_FILE);
+            Path temp = Path.of(CACHE_DIR, INDEX_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(index, writer);
+            }
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save schematic cache index: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Layout: header (magic, version, size, offset), the palette as state strings,
+     * block entities as one uncompressed NBT compound, then every non-empty section
+     * as its coordinates followed by {@link SchematicSection#write}.
+     */
+    private static void writeCompiled(SimpleSchematic schematic, Path path) throws IOException {
+        // Collect the states used by any section into one schematic-wide palette
+        Reference2IntMap<BlockState> globalIds = new Reference2IntOpenHashMap<>();
+        List<BlockState> palette = new ArrayList<>();
+        int sectionCount = 0;
+        for (int sectionY = 0; sectionY < schematic.getSectionsY(); sectionY++) {
+            for (int sectionZ = 0; sectionZ < schematic.getSectionsZ(); sectionZ++) {
+                for (int sectionX = 0; sectionX < schematic.getSectionsX(); sectionX++) {
+                    SchematicSection section = schematic.getSection(sectionX, sectionY, sectionZ);
+                    if (section == null || section.isEmpty()) {
+                        continue;
+                    }
+                    sectionCount++;
+                    for (BlockState state : section.getPalette()) {
+                        if (!globalIds.containsKey(state)) {
+                            globalIds.put(state, palette.size());
+                            palette.add(state);
+                        }
+                    }
+                }
+            }
+        }
+        
+        Files.createDirectories(path.getParent());
+        // Imports of the same file with different options can compile it at the same time,
+        // so each write gets its own temp file and only the atomic move picks a winner
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(schematic.width);
+            out.writeInt(schematic.height);
+            out.writeInt(schematic.length);
+            out.writeInt(schematic.offset.getX());
+            out.writeInt(schematic.offset.getY());
+            out.writeInt(schematic.offset.getZ());
+            
+            out.writeInt(palette.size());
+            for (BlockState state : palette) {
+                byte[] bytes = BlockStateParser.serialize(state).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            
+            CompoundTag blockEntities = new CompoundTag();
+            ListTag list = new ListTag();
+            list.addAll(schematic.getBlockEntities());
+            blockEntities.put("BlockEntities", list);
+            ByteArrayOutputStream nbtBytes = new ByteArrayOutputStream();
+            NbtIo.write(blockEntities, new DataOutputStream(nbtBytes));
+            out.writeInt(nbtBytes.size());
+            nbtBytes.writeTo(out);
+            
+            out.writeInt(sectionCount);
+            for (int sectionY = 0; sectionY < schematic.getSectionsY(); sectionY++) {
+                for (int sectionZ = 0; sectionZ < schematic.getSectionsZ(); sectionZ++) {
+                    for (int sectionX = 0; sectionX < schematic.getSectionsX(); sectionX++) {
+                        SchematicSection section = schematic.getSection(sectionX, sectionY, sectionZ);
+                        if (section == null || section.isEmpty()) {
+                            continue;
+                        }
+                        out.writeShort(sectionX);
+                        out.writeShort(sectionY);
+                        out.writeShort(sectionZ);
+                        section.write(out, globalIds);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static SimpleSchematic readCompiled(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readCompiled(buffer);
+        } catch (RuntimeException e) {
+            // Buffer underflows and the like mean a truncated or corrupt file
+            throw new IOException("Corrupt compiled schematic: " + e, e);
+        }
+    }
+    
+    private static SimpleSchematic readCompiled(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a compiled schematic of the current format");
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int length = buffer.getInt();
+        BlockPos offset = new BlockPos(buffer.getInt(), buffer.getInt(), buffer.getInt());
+        SimpleSchematic schematic = new SimpleSchematic(width, height, length, offset);
+        
+        BlockState[] palette = new BlockState[buffer.getInt()];
+        for (int i = 0; i < palette.length; i++) {
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            palette[i] = BlockStateCache.get(new String(bytes, StandardCharsets.UTF_8));
+        }
+        
+        byte[] nbtBytes = new byte[buffer.getInt()];
+        buffer.get(nbtBytes);
+        CompoundTag blockEntities = NbtIo.read(new DataInputStream(new ByteArrayInputStream(nbtBytes)), NbtAccounter.unlimitedHeap());
+        ListTag list = blockEntities.getList("BlockEntities", Tag.TAG_COMPOUND);
+        for (int i = 0; i < list.size(); i++) {
+            schematic.addBlockEntity(list.getCompound(i));
+        }
+        
+        int sectionCount = buffer.getInt();
+        for (int i = 0; i < sectionCount; i++) {
+            int sectionX = buffer.getShort() & 0xFFFF;
+            int sectionY = buffer.getShort() & 0xFFFF;
+            int sectionZ = buffer.getShort() & 0xFFFF;
+            if (sectionX >= schematic.getSectionsX() || sectionY >= schematic.getSectionsY() || sectionZ >= schematic.getSectionsZ()) {
+                throw new IOException("Section outside the schematic bounds");
+            }
+            schematic.setSection(sectionX, sectionY, sectionZ, SchematicSection.read(buffer, palette));
+        }
+        return schematic;
+    }
+    
+    private static class IndexEntry {
+        long size;
+        long modified;
+        String hash;
+    }
+}
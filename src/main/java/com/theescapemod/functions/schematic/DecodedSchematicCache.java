@@ -0,0 +1,122 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.config.TEMFConfig;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently decoded schematics in memory, so importing the same file again, or pasting it
+ * at several positions, doesn't read and decode it again. Entries are keyed by content hash,
+ * so identical files share one decoded instance. The least recently used entries are dropped
+ * once their combined {@link SimpleSchematic#getMemoryUsage()} exceeds the configured budget,
+ * and a file's entry is dropped as soon as its modification time changes.
+ * Cached schematics are shared and must not be modified.
+ */
+public class DecodedSchematicCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    // Least recently used first
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Last seen state of each file, to notice edits
+    private static final Map<String, FileState> files = new HashMap<>();
+    private static long totalBytes;
+    
+    /**
+     * @return the decoded schematic for a file's content, or null if it isn't cached
+     */
+    public static synchronized SimpleSchematic get(File schematicFile, String hash, int structurePalette, boolean skipAir) {
+        track(schematicFile, hash);
+        Entry entry = entries.get(getKey(hash, structurePalette, skipAir));
+        if (entry == null) {
+            return null;
+        }
+        LOGGER.info("Reusing decoded {} from memory", schematicFile.getName());
+        return entry.schematic;
+    }
+    
+    /**
+     * Caches a decoded schematic, evicting the least recently used ones to stay within the budget.
+     * Schematics larger than the whole budget are not cached.
+     */
+    public static synchronized void put(File schematicFile, String hash, int structurePalette, boolean skipAir,
+                                        SimpleSchematic schematic) {
+        long budget = getBudgetBytes();
+        long weight = schematic.getMemoryUsage();
+        if (weight > budget) {
+            LOGGER.debug("{} uses {} MB, more than the decoded schematic cache holds", schematicFile.getName(), weight >> 20);
+            return;
+        }
+        
+        track(schematicFile, hash);
+        Entry previous = entries.put(getKey(hash, structurePalette, skipAir), new Entry(hash, schematic, weight));
+        if (previous != null) {
+            totalBytes -= previous.weight;
+        }
+        totalBytes += weight;
+        
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalBytes > budget && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.schematic == schematic) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.weight;
+        }
+        LOGGER.debug("Kept decoded {} in memory, {} of {} MB in use", schematicFile.getName(), totalBytes >> 20, budget >> 20);
+    }
+    
+    /**
+     * Drops every cached schematic.
+     */
+    public static synchronized void clear() {
+        entries.clear();
+        files.clear();
+        totalBytes = 0;
+    }
+    
+    /**
+     * Records the file's current state. If it changed since it was last seen, the entries of its
+     * old content are dropped, unless another file with the same content still uses them.
+     */
+    private static void track(File schematicFile, String hash) {
+        String path = schematicFile.getAbsolutePath();
+        FileState current = new FileState(schematicFile.length(), schematicFile.lastModified(), hash);
+        FileState previous = files.put(path, current);
+        if (previous == null || previous.equals(current)) {
+            return;
+        }
+        
+        if (!previous.hash.equals(hash) && files.values().stream().noneMatch(state -> state.hash.equals(previous.hash))) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.hash.equals(previous.hash)) {
+                    iterator.remove();
+                    totalBytes -= entry.weight;
+                }
+            }
+            LOGGER.debug("{} changed on disk, dropped its decoded copy", schematicFile.getName());
+        }
+    }
+    
+    private static long getBudgetBytes() {
+        return TEMFConfig.SCHEMATIC_CACHE_MB.get() * 1024L * 1024L;
+    }
+    
+    private static String getKey(String hash, int structurePalette, boolean skipAir) {
+        return hash + "|" + structurePalette + "|" + skipAir;
+    }
+    
+    private record Entry(String hash, SimpleSchematic schematic, long weight) {
+    }
+    
+    private record FileState(long size, long modified, String hash) {
+    }
+}
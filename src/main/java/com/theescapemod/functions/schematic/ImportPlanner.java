@@ -0,0 +1,120 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Works out how the enabled imports are written before any job is queued.
+ * Every import's file and level are resolved once, imports are grouped by dimension, and
+ * imports whose footprints share a chunk are grouped so they can be pasted as one job that
+ * touches each chunk once, or as jobs run one after the other. Within a group imports keep
+ * their config order, so where they overlap the last one wins.
+ */
+class ImportPlanner {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    /**
+     * An import with its file, level and size looked up.
+     */
+    record ResolvedImport(SchematicImport schematicImport, File file, ServerLevel level, SchematicProbe.Info info) {
+        
+        int minChunkX() {
+            return schematicImport.x >> 4;
+        }
+        
+        int minChunkZ() {
+            return schematicImport.z >> 4;
+        }
+        
+        int maxChunkX() {
+            return (schematicImport.x + info.width() - 1) >> 4;
+        }
+        
+        int maxChunkZ() {
+            return (schematicImport.z + info.length() - 1) >> 4;
+        }
+        
+        boolean sharesChunksWith(ResolvedImport other) {
+            return minChunkX() <= other.maxChunkX() && other.minChunkX() <= maxChunkX()
+                && minChunkZ() <= other.maxChunkZ() && other.minChunkZ() <= maxChunkZ();
+        }
+    }
+    
+    /**
+     * Resolves every import, skipping those whose file or dimension can't be found.
+     * @return the imports per level, in config order
+     */
+    static Map<ServerLevel, List<ResolvedImport>> resolve(MinecraftServer server, List<SchematicImport> imports,
+                                                         Function<String, File> fileLookup) {
+        Map<ServerLevel, List<ResolvedImport>> byLevel = new LinkedHashMap<>();
+        for (SchematicImport schematicImport : imports) {
+            File schematicFile = fileLookup.apply(schematicImport.filename);
+            if (schematicFile == null) {
+                LOGGER.error("Schematic file not found: {}", schematicImport.filename);
+                continue;
+            }
+            
+            ResourceLocation dimensionId = ResourceLocation.tryParse(schematicImport.dimension);
+            ServerLevel level = dimensionId != null
+                ? server.getLevel(ResourceKey.create(Registries.DIMENSION, dimensionId)) : null;
+            if (level == null) {
+                LOGGER.error("Dimension not found for {}: {}", schematicImport.filename, schematicImport.dimension);
+                continue;
+            }
+            
+            SchematicProbe.Info info = SchematicProbe.probe(schematicFile);
+            if (!info.isValid()) {
+                LOGGER.error("Could not read schematic {}: {}", schematicFile.getName(), info.describe());
+                continue;
+            }
+            byLevel.computeIfAbsent(level, key -> new ArrayList<>())
+                .add(new ResolvedImport(schematicImport, schematicFile, level, info));
+        }
+        return byLevel;
+    }
+    
+    /**
+     * Splits one level's imports into groups that share no chunk with each other.
+     * @return the groups ordered by their first import, each in config order
+     */
+    static List<List<ResolvedImport>> groupOverlapping(List<ResolvedImport> imports) {
+        // Union-find over the imports; import counts are small, so the pairwise check is fine
+        int[] parent = new int[imports.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < imports.size(); i++) {
+            for (int j = i + 1; j < imports.size(); j++) {
+                if (imports.get(i).sharesChunksWith(imports.get(j))) {
+                    parent[find(parent, j)] = find(parent, i);
+                }
+            }
+        }
+        
+        Map<Integer, List<ResolvedImport>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < imports.size(); i++) {
+            groups.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(imports.get(i));
+        }
+        return new ArrayList<>(groups.values());
+    }
+    
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,115 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.datafixers.DataFixer;
+import com.mojang.logging.LogUtils;
+import com.mojang.serialization.Dynamic;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.util.datafix.fixes.BlockStateData;
+import net.minecraft.util.datafix.fixes.References;
+import net.minecraft.world.level.block.state.BlockState;
+import org.slf4j.Logger;
+
+import java.util.stream.Collectors;
+
+/**
+ * Maps pre-1.13 numeric block ids and data values to modern block states.
+ * The table is a flat {@code BlockState[4096 * 16]} indexed by {@code id << 4 | data}, built
+ * once from vanilla's flattening table and run through the data fixer up to the current
+ * version, so renamed blocks come out under their current names.
+ */
+public final class LegacyBlockTable {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    public static final int MAX_ID = 4096;
+    // Data version of the snapshot that introduced the flattened block states
+    private static final int FLATTENING_VERSION = 1451;
+    
+    private static volatile BlockState[] table;
+    
+    private LegacyBlockTable() {
+    }
+    
+    /**
+     * @return the modern state for a legacy id and data value, or null if the id is unknown
+     */
+    public static BlockState get(int blockId, int data) {
+        if (blockId < 0 || blockId >= MAX_ID) {
+            return null;
+        }
+        return getTable()[(blockId << 4) | (data & 15)];
+    }
+    
+    private static BlockState[] getTable() {
+        BlockState[] result = table;
+        if (result == null) {
+            synchronized (LegacyBlockTable.class) {
+                result = table;
+                if (result == null) {
+                    result = build();
+                    table = result;
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static BlockState[] build() {
+        long start = System.nanoTime();
+        BlockState[] result = new BlockState[MAX_ID * 16];
+        DataFixer fixer = DataFixers.getDataFixer();
+        int currentVersion = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        int mapped = 0;
+        
+        for (int key = 0; key < result.length; key++) {
+            Dynamic<Tag> legacy = BlockStateData.getTag(key).convert(NbtOps.INSTANCE);
+            // The flattening table answers air for anything it doesn't know
+            if (key >= 16 && "minecraft:air".equals(legacy.get("Name").asString(""))) {
+                continue;
+            }
+            
+            Dynamic<Tag> fixed = fixer.update(References.BLOCK_STATE, legacy, FLATTENING_VERSION, currentVersion);
+            if (fixed.getValue() instanceof CompoundTag stateTag) {
+                result[key] = NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), stateTag);
+                mapped++;
+            }
+        }
+        
+        LOGGER.info("Built legacy block table with {} entries in {} ms", mapped, (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+    
+    /**
+     * Counts legacy ids that had no mapping during one import, so they can be reported
+     * in a single line instead of once per block.
+     */
+    public static class UnknownIds {
+        private final Int2IntMap counts = new Int2IntOpenHashMap();
+        
+        public void add(int blockId) {
+            counts.mergeInt(blockId, 1, Integer::sum);
+        }
+        
+        public boolean isEmpty() {
+            return counts.isEmpty();
+        }
+        
+        public void log(String source) {
+            if (counts.isEmpty()) {
+                return;
+            }
+            String summary = counts.int2IntEntrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()))
+                .map(entry -> entry.getIntKey() + " x" + entry.getIntValue())
+                .collect(Collectors.joining(", "));
+            LOGGER.warn("{}: {} unknown legacy block ids were replaced: {}", source, counts.size(), summary);
+        }
+    }
+}
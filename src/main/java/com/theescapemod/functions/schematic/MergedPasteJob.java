@@ -0,0 +1,328 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.world.ChunkPreloader;
+import com.theescapemod.functions.world.ChunkSectionWriter;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Pastes a group of imports whose footprints share chunks as a single job, planned by
+ * {@link ImportPlanner}. The job walks the union of their chunks along X and then Z and writes
+ * every import's part of a chunk, in config order, before moving to the next, so each chunk is
+ * loaded, written, relit and sent once and the last import wins where they overlap.
+ * Chunks are loaded ahead a {@link ChunkPreloader} window at a time.
+ * After every tick the position is written to {@link SchematicPasteSavedData} under each
+ * import's key, so a restart that plans the same group again resumes the paste.
+ */
+public class MergedPasteJob implements SchematicJob {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private final ServerLevel level;
+    private final List<Member> members;
+    private final String group;
+    private final SchematicPaster.PasteStats stats = new SchematicPaster.PasteStats();
+    private final boolean[] failedMembers;
+    
+    // Filled in once every member has decoded
+    private SimpleSchematic[] schematics;
+    private List<Long2ObjectMap<List<CompoundTag>>> blockEntities;
+    
+    private LongArrayList chunks;
+    private int nextChunk;
+    private int nextMember;
+    private int blockEntitiesPlaced;
+    private ChunkPreloader preloader;
+    private boolean pasting;
+    
+    private long startNanos;
+    
+    public MergedPasteJob(ServerLevel level, List<Member> members) {
+        this.level = level;
+        this.members = members;
+        this.failedMembers = new boolean[members.size()];
+        this.group = getGroupKey(members);
+        
+        SchematicPasteSavedData.Checkpoint checkpoint = findCheckpoint(SchematicPasteSavedData.get(level.getServer()));
+        if (checkpoint != null) {
+            nextChunk = checkpoint.nextSection();
+            nextMember = checkpoint.nextBlockEntity();
+            LOGGER.info("Resuming {} at chunk {}", getDescription(), nextChunk);
+        }
+    }
+    
+    private static String getGroupKey(List<Member> members) {
+        StringBuilder key = new StringBuilder();
+        for (Member member : members) {
+            if (!key.isEmpty()) {
+                key.append(',');
+            }
+            key.append(member.schematicImport().getKey()).append(member.delta() ? "+delta" : "");
+        }
+        return key.toString();
+    }
+    
+    /**
+     * @return the position where an interrupted paste of exactly this group stopped, or null
+     */
+    private SchematicPasteSavedData.Checkpoint findCheckpoint(SchematicPasteSavedData checkpoints) {
+        SchematicPasteSavedData.Checkpoint first = null;
+        for (Member member : members) {
+            SchematicPasteSavedData.Checkpoint checkpoint = checkpoints.get(member.schematicImport().getKey());
+            if (checkpoint == null || !checkpoint.group().equals(group)
+                    || !checkpoint.matches(member.schematicFile(), member.delta())) {
+                return null;
+            }
+            if (first == null) {
+                first = checkpoint;
+            } else if (checkpoint.nextSection() != first.nextSection() || checkpoint.nextBlockEntity() != first.nextBlockEntity()) {
+                return null;
+            }
+        }
+        return first;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Paste " + members.size() + " overlapping imports in " + level.dimension().location();
+    }
+    
+    @Override
+    public boolean isDecoding() {
+        return schematics == null;
+    }
+    
+    @Override
+    public boolean isLoadingChunks() {
+        return preloader != null && (!pasting || preloader.isWaiting());
+    }
+    
+    @Override
+    public ChunkPreloader getPreloader() {
+        return preloader;
+    }
+    
+    @Override
+    public float getProgress() {
+        return chunks == null || chunks.isEmpty() ? 0.0f : (float) nextChunk / chunks.size();
+    }
+    
+    @Override
+    public long getEtaSeconds() {
+        float progress = getProgress();
+        if (!pasting || progress <= 0) {
+            return -1;
+        }
+        double elapsed = (System.nanoTime() - startNanos) / 1.0E9;
+        return (long) (elapsed * (1.0f - progress) / progress);
+    }
+    
+    @Override
+    public boolean tick(long deadlineNanos) {
+        if (isDecoding()) {
+            for (Member member : members) {
+                if (!member.source().isDone()) {
+                    return false;
+                }
+            }
+            plan();
+        }
+        
+        if (!pasting) {
+            if (!preloader.isLoaded()) {
+                return false;
+            }
+            LOGGER.info("Loaded {} chunks for {}, pasting", preloader.getChunkCount(), getDescription());
+            pasting = true;
+            startNanos = System.nanoTime();
+        }
+        
+        ChunkSectionWriter writer = new ChunkSectionWriter(level);
+        try {
+            while (nextChunk < chunks.size() && System.nanoTime() < deadlineNanos) {
+                long chunkPos = chunks.getLong(nextChunk);
+                int chunkX = ChunkPos.getX(chunkPos);
+                int chunkZ = ChunkPos.getZ(chunkPos);
+                if (!preloader.isLoaded(chunkX, chunkZ, chunkX, chunkZ)) {
+                    break;
+                }
+                SimpleSchematic schematic = schematics[nextMember];
+                if (schematic != null) {
+                    Member member = members.get(nextMember);
+                    SchematicPaster.pasteChunk(level, member.schematicImport().blockUpdates ? null : writer, schematic,
+                        chunkX, chunkZ, member.targetPos(), member.replaceExisting(), stats);
+                }
+                
+                if (++nextMember == members.size()) {
+                    // Block entities go last, once every import's blocks in the chunk are in place
+                    placeBlockEntities(chunkPos);
+                    nextMember = 0;
+                    nextChunk++;
+                }
+            }
+        } finally {
+            writer.finish();
+        }
+        
+        boolean finished = nextChunk >= chunks.size();
+        if (!finished) {
+            SchematicPasteSavedData checkpoints = SchematicPasteSavedData.get(level.getServer());
+            for (Member member : members) {
+                File file = member.schematicFile();
+                checkpoints.put(member.schematicImport().getKey(), new SchematicPasteSavedData.Checkpoint(
+                    file.length(), file.lastModified(), member.delta(), nextChunk, nextMember, group));
+            }
+        }
+        return finished;
+    }
+    
+    /**
+     * Collects the decoded members and the chunks they cover, then starts loading those chunks.
+     */
+    private void plan() {
+        schematics = new SimpleSchematic[members.size()];
+        blockEntities = new ArrayList<>();
+        LongSet covered = new LongOpenHashSet();
+        
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            Long2ObjectMap<List<CompoundTag>> byChunk = new Long2ObjectOpenHashMap<>();
+            blockEntities.add(byChunk);
+            try {
+                schematics[i] = member.source().join();
+            } catch (CompletionException | CancellationException e) {
+                LOGGER.error("Failed to decode schematic {}: {}", member.schematicFile().getName(),
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                failedMembers[i] = true;
+                continue;
+            }
+            
+            covered.addAll(schematics[i].getChunkFootprint(member.targetPos()));
+            if (member.schematicImport().includeEntities) {
+                for (CompoundTag blockEntity : schematics[i].getBlockEntities()) {
+                    BlockPos relativePos = SchematicPaster.getBlockEntityPos(blockEntity);
+                    if (relativePos != null) {
+                        byChunk.computeIfAbsent(ChunkPos.asLong(member.targetPos().offset(relativePos)),
+                            key -> new ArrayList<>()).add(blockEntity);
+                    }
+                }
+            }
+        }
+        
+        // One pass along X and then Z, like a single paste
+        chunks = new LongArrayList(covered);
+        chunks.sort((long first, long second) -> ChunkPos.getX(first) != ChunkPos.getX(second)
+            ? Integer.compare(ChunkPos.getX(first), ChunkPos.getX(second))
+            : Integer.compare(ChunkPos.getZ(first), ChunkPos.getZ(second)));
+        
+        if (nextChunk > chunks.size()) {
+            LOGGER.warn("Checkpoint of {} is past its last chunk, starting over", getDescription());
+            nextChunk = 0;
+            nextMember = 0;
+        }
+        LongArrayList footprint = new LongArrayList(chunks.subList(nextChunk, chunks.size()));
+        preloader = new ChunkPreloader(level, footprint);
+    }
+    
+    private void placeBlockEntities(long chunkPos) {
+        for (int i = 0; i < members.size(); i++) {
+            List<CompoundTag> inChunk = blockEntities.get(i).get(chunkPos);
+            if (inChunk == null) {
+                continue;
+            }
+            for (CompoundTag blockEntity : inChunk) {
+                if (SchematicPaster.placeBlockEntity(level, blockEntity, members.get(i).targetPos())) {
+                    blockEntitiesPlaced++;
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void onStopped(boolean cancelled) {
+        if (preloader != null) {
+            preloader.release();
+        }
+        SchematicPasteSavedData checkpoints = SchematicPasteSavedData.get(level.getServer());
+        SchematicLedger ledger = SchematicLedger.get(level.getServer());
+        
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            SchematicImport schematicImport = member.schematicImport();
+            SchematicManager.onPasteJobStopped(schematicImport.getKey());
+            checkpoints.remove(schematicImport.getKey());
+            if (cancelled || failedMembers[i]) {
+                continue;
+            }
+            
+            if (member.contentHash() != null) {
+                ledger.put(schematicImport.getKey(), new SchematicLedger.AppliedImport(
+                    schematicImport.filename, member.contentHash(), schematicImport.dimension, member.targetPos(),
+                    schematicImport.palette, schematicImport.skipAir));
+            }
+        }
+        
+        if (cancelled) {
+            LOGGER.info("Cancelled {} at {}% ({} blocks placed)", getDescription(), (int) (getProgress() * 100), stats.placed);
+        } else {
+            LOGGER.info("✓ {}: {} blocks placed, {} skipped, {} failed, {} block entities",
+                getDescription(), stats.placed, stats.skipped, stats.failed, blockEntitiesPlaced);
+        }
+    }
+    
+    @Override
+    public void onFailed(Exception error) {
+        // The checkpoints of the last complete tick stay and no ledger entries are written, so the next start retries
+        if (preloader != null) {
+            preloader.release();
+        }
+        for (Member member : members) {
+            SchematicManager.onPasteJobStopped(member.schematicImport().getKey());
+        }
+        LOGGER.error("✗ {} failed at {}%, it resumes on the next start", getDescription(), (int) (getProgress() * 100));
+    }
+    
+    @Override
+    public void onShutdown() {
+        // The checkpoints stay, so the next start picks up from here
+        if (preloader != null) {
+            preloader.release();
+        }
+        for (Member member : members) {
+            SchematicManager.onPasteJobStopped(member.schematicImport().getKey());
+        }
+        LOGGER.info("Paused {} at {}% for shutdown", getDescription(), (int) (getProgress() * 100));
+    }
+    
+    /**
+     * One import of the group.
+     * @param source the decoded schematic, or the difference to apply when {@code delta} is set
+     * @param contentHash hash of the file, recorded in the ledger once the paste finishes; may be null
+     */
+    public record Member(SchematicImport schematicImport, File schematicFile, CompletableFuture<SimpleSchematic> source,
+                         boolean delta, String contentHash) {
+        
+        BlockPos targetPos() {
+            return new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
+        }
+        
+        boolean replaceExisting() {
+            return delta || schematicImport.replaceExisting;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and decodes schematics for imports off the server thread.
+ * Hashing and compiled cache reads are I/O bound and run on virtual threads; decoding
+ * source files is CPU bound and runs on a small fixed pool. Imports are submitted as
+ * soon as the server starts, and the server thread only waits on results it is
+ * ready to paste. Only decodes still in flight are tracked here; finished results are kept in
+ * the {@link DecodedSchematicCache}, so a later import of the same content skips reading and
+ * decoding altogether while it fits the cache's budget.
+ */
+@EventBusSubscriber
+public class SchematicDecoder {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private static final int CPU_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    
+    private static final Map<String, CompletableFuture<SimpleSchematic>> pending = new ConcurrentHashMap<>();
+    private static ExecutorService ioExecutor;
+    private static ExecutorService cpuExecutor;
+    
+    /**
+     * Starts loading the schematic for an import, if it isn't already loading.
+     */
+    public static synchronized CompletableFuture<SimpleSchematic> prefetch(File schematicFile, SchematicImport schematicImport) {
+        String key = getKey(schematicFile, schematicImport);
+        CompletableFuture<SimpleSchematic> future = pending.get(key);
+        if (future != null) {
+            return future;
+        }
+        
+        ensureExecutors();
+        int structurePalette = schematicImport.palette;
+        boolean skipAir = schematicImport.skipAir;
+        future = CompletableFuture
+            .supplyAsync(() -> {
+                try {
+                    // The same content decoded earlier, for any file or import, is reused from memory
+                    String hash = getHashOrNull(schematicFile);
+                    SimpleSchematic decoded = hash != null
+                        ? DecodedSchematicCache.get(schematicFile, hash, structurePalette, skipAir) : null;
+                    if (decoded != null) {
+                        return new Loaded(hash, decoded, true);
+                    }
+                    return new Loaded(hash, CompiledSchematicCache.loadCached(schematicFile, structurePalette), false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ioExecutor)
+            .thenApplyAsync(loaded -> {
+                if (loaded.decoded()) {
+                    return loaded.schematic();
+                }
+                try {
+                    SimpleSchematic schematic = loaded.schematic() != null
+                        ? loaded.schematic() : CompiledSchematicCache.compile(schematicFile, structurePalette);
+                    if (skipAir) {
+                        long removed = schematic.stripAir();
+                        LOGGER.info("Skipping air in {}: {} positions left untouched", schematicFile.getName(), removed);
+                    }
+                    int reused = schematic.internSections();
+                    LOGGER.debug("{} shares {} sections with already loaded schematics", schematicFile.getName(), reused);
+                    if (loaded.hash() != null) {
+                        DecodedSchematicCache.put(schematicFile, loaded.hash(), structurePalette, skipAir, schematic);
+                    }
+                    return schematic;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, cpuExecutor);
+        
+        track(key, future);
+        LOGGER.debug("Queued {} for decoding", schematicFile.getName());
+        return future;
+    }
+    
+    /**
+     * Starts working out what changed in an import's file since an earlier version was pasted.
+     * The result only sets the positions that differ; if the earlier version is no longer in the
+     * compiled cache, the whole current schematic is returned instead.
+     * @param previousHash content hash of the version that was pasted before
+     */
+    public static synchronized CompletableFuture<SimpleSchematic> prefetchDelta(File schematicFile, SchematicImport schematicImport,
+                                                                                String previousHash) {
+        String key = getKey(schematicFile, schematicImport) + "|since " + previousHash;
+        CompletableFuture<SimpleSchematic> future = pending.get(key);
+        if (future != null) {
+            return future;
+        }
+        
+        CompletableFuture<SimpleSchematic> current = prefetch(schematicFile, schematicImport);
+        int structurePalette = schematicImport.palette;
+        boolean skipAir = schematicImport.skipAir;
+        future = current.thenApplyAsync(schematic -> {
+            SimpleSchematic previous = CompiledSchematicCache.readByHash(previousHash, structurePalette);
+            if (previous == null) {
+                LOGGER.warn("Previous version of {} is no longer cached, pasting it whole", schematicFile.getName());
+                return schematic;
+            }
+            if (skipAir) {
+                previous.stripAir();
+            }
+            
+            SimpleSchematic delta = SimpleSchematic.difference(previous, schematic);
+            LOGGER.info("{} changed in {} of {} positions since it was last pasted",
+                schematicFile.getName(), delta.getBlockCount(), schematic.getBlockCount());
+            return delta;
+        }, cpuExecutor);
+        
+        track(key, future);
+        return future;
+    }
+    
+    /**
+     * Returns the decoded schematic for an import, waiting for it if it is still being decoded
+     * and starting it first if it was never queued.
+     */
+    public static SimpleSchematic take(File schematicFile, SchematicImport schematicImport) throws IOException {
+        try {
+            return prefetch(schematicFile, schematicImport).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Failed to decode " + schematicFile.getName() + ": " + cause, cause);
+        }
+    }
+    
+    /**
+     * Forgets every queued decode, so the next request for any import starts afresh.
+     */
+    public static void clear() {
+        pending.clear();
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        synchronized (SchematicDecoder.class) {
+            pending.values().forEach(future -> future.cancel(false));
+            pending.clear();
+            DecodedSchematicCache.clear();
+            if (ioExecutor != null) {
+                ioExecutor.shutdownNow();
+                ioExecutor = null;
+            }
+            if (cpuExecutor != null) {
+                cpuExecutor.shutdownNow();
+                cpuExecutor = null;
+            }
+        }
+    }
+    
+    /**
+     * Remembers a decode until it finishes, so requests meanwhile share it. Once done it is
+     * forgotten and the result stays reachable only through the cache and whoever asked for it.
+     */
+    private static void track(String key, CompletableFuture<SimpleSchematic> future) {
+        pending.put(key, future);
+        future.whenComplete((result, error) -> pending.remove(key, future));
+    }
+    
+    private static String getHashOrNull(File schematicFile) {
+        try {
+            return CompiledSchematicCache.getHash(schematicFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to hash {}, it won't be kept in memory: {}", schematicFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Size and modification time are part of the key, so an edited file is never served
+     * the decode of its earlier content.
+     */
+    private static String getKey(File schematicFile, SchematicImport schematicImport) {
+        return schematicFile.getAbsolutePath() + "|" + schematicFile.length() + "|" + schematicFile.lastModified()
+            + "|" + schematicImport.palette + "|" + schematicImport.skipAir;
+    }
+    
+    private static void ensureExecutors() {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        if (cpuExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            cpuExecutor = Executors.newFixedThreadPool(CPU_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "TEMF Schematic Decoder #" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    /**
+     * What the I/O step found: a schematic already decoded in memory, or a compiled entry still to finish.
+     */
+    private record Loaded(String hash, SimpleSchematic schematic, boolean decoded) {
+    }
+}
@@ -0,0 +1,186 @@
+package com.theescapemod.functions.schematic;
+
+import com.theescapemod.functions.world.VoidChunkGenerator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes one schematic import into the chunks of a {@link VoidChunkGenerator} as they generate,
+ * each chunk receiving only its own slice. The schematic is not decoded until it is first needed,
+ * and only weakly held after that: placements live as long as the server, so the decoded copy is
+ * left to the {@link DecodedSchematicCache} and loaded through it again when a chunk needs it.
+ */
+class SchematicGenerationPlacement implements VoidChunkGenerator.Placement {
+    private final File schematicFile;
+    private final SchematicImport schematicImport;
+    private final BlockPos targetPos;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+    
+    private volatile WeakReference<SimpleSchematic> schematic;
+    private volatile CompletableFuture<Long2ObjectMap<List<CompoundTag>>> blockEntities;
+    
+    SchematicGenerationPlacement(File schematicFile, SchematicImport schematicImport, int width, int length) {
+        this.schematicFile = schematicFile;
+        this.schematicImport = schematicImport;
+        this.targetPos = new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
+        this.minChunkX = targetPos.getX() >> 4;
+        this.minChunkZ = targetPos.getZ() >> 4;
+        this.maxChunkX = (targetPos.getX() + width - 1) >> 4;
+        this.maxChunkZ = (targetPos.getZ() + length - 1) >> 4;
+    }
+    
+    /**
+     * @return the decoded schematic, loading it again if it is no longer in memory
+     */
+    CompletableFuture<SimpleSchematic> getSchematic() {
+        WeakReference<SimpleSchematic> reference = schematic;
+        SimpleSchematic decoded = reference != null ? reference.get() : null;
+        if (decoded != null) {
+            return CompletableFuture.completedFuture(decoded);
+        }
+        return SchematicDecoder.prefetch(schematicFile, schematicImport).whenComplete((loaded, error) -> {
+            if (loaded != null) {
+                schematic = new WeakReference<>(loaded);
+            }
+        });
+    }
+    
+    @Override
+    public boolean intersects(ChunkPos chunkPos) {
+        return chunkPos.x >= minChunkX && chunkPos.x <= maxChunkX && chunkPos.z >= minChunkZ && chunkPos.z <= maxChunkZ;
+    }
+    
+    /**
+     * Completes with the decoded schematic, which the waiting chunk holds on to until it is placed.
+     * The block entity index is kept for good, it is small next to the blocks.
+     */
+    @Override
+    public CompletableFuture<SimpleSchematic> whenReady() {
+        CompletableFuture<SimpleSchematic> decoded = getSchematic();
+        CompletableFuture<Long2ObjectMap<List<CompoundTag>>> index;
+        synchronized (this) {
+            if (blockEntities == null || blockEntities.isCompletedExceptionally()) {
+                blockEntities = decoded.thenApply(this::indexBlockEntities);
+            }
+            index = blockEntities;
+        }
+        return decoded.thenCombine(index, (loaded, ignored) -> loaded);
+    }
+    
+    /**
+     * Groups the block entities by chunk, already in the form a generating chunk stores them.
+     */
+    private Long2ObjectMap<List<CompoundTag>> indexBlockEntities(SimpleSchematic decoded) {
+        Long2ObjectMap<List<CompoundTag>> byChunk = new Long2ObjectOpenHashMap<>();
+        if (!schematicImport.includeEntities) {
+            return byChunk;
+        }
+        
+        for (CompoundTag blockEntity : decoded.getBlockEntities()) {
+            BlockPos relativePos = SchematicPaster.getBlockEntityPos(blockEntity);
+            if (relativePos == null) {
+                continue;
+            }
+            // Chunks create pending block entities from their id, which Sponge schematics store as "Id"
+            CompoundTag worldTag = blockEntity.copy();
+            if (!worldTag.contains("id")) {
+                if (!worldTag.contains("Id")) {
+                    continue;
+                }
+                worldTag.putString("id", worldTag.getString("Id"));
+            }
+            BlockPos worldPos = targetPos.offset(relativePos);
+            worldTag.putInt("x", worldPos.getX());
+            worldTag.putInt("y", worldPos.getY());
+            worldTag.putInt("z", worldPos.getZ());
+            worldTag.remove("Pos");
+            byChunk.computeIfAbsent(ChunkPos.asLong(worldPos), key -> new ArrayList<>()).add(worldTag);
+        }
+        return byChunk;
+    }
+    
+    @Override
+    public void place(ChunkAccess chunk) {
+        SimpleSchematic decoded = getSchematic().join();
+        ChunkPos chunkPos = chunk.getPos();
+        int minX = Math.max(chunkPos.getMinBlockX(), targetPos.getX());
+        int maxX = Math.min(chunkPos.getMaxBlockX(), targetPos.getX() + decoded.width - 1);
+        int minZ = Math.max(chunkPos.getMinBlockZ(), targetPos.getZ());
+        int maxZ = Math.min(chunkPos.getMaxBlockZ(), targetPos.getZ() + decoded.length - 1);
+        int minY = Math.max(chunk.getMinBuildHeight(), targetPos.getY());
+        int maxY = Math.min(chunk.getMaxBuildHeight() - 1, targetPos.getY() + decoded.height - 1);
+        if (minX > maxX || minZ > maxZ || minY > maxY) {
+            return;
+        }
+        
+        BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
+        LevelChunkSection section = null;
+        int sectionIndex = -1;
+        try {
+            for (int y = minY; y <= maxY; y++) {
+                if (chunk.getSectionIndex(y) != sectionIndex) {
+                    if (section != null) {
+                        section.release();
+                    }
+                    sectionIndex = chunk.getSectionIndex(y);
+                    section = chunk.getSection(sectionIndex);
+                    section.acquire();
+                }
+                
+                for (int z = minZ; z <= maxZ; z++) {
+                    for (int x = minX; x <= maxX; x++) {
+                        BlockState state = decoded.getBlock(x - targetPos.getX(), y - targetPos.getY(), z - targetPos.getZ());
+                        if (state == null) {
+                            continue;
+                        }
+                        BlockState oldState = section.getBlockState(x & 15, y & 15, z & 15);
+                        if (!schematicImport.replaceExisting && !oldState.isAir()) {
+                            continue;
+                        }
+                        
+                        section.setBlockState(x & 15, y & 15, z & 15, state, false);
+                        worldPos.set(x, y, z);
+                        if (oldState.hasBlockEntity()) {
+                            chunk.removeBlockEntity(worldPos);
+                        }
+                        if (state.hasBlockEntity()) {
+                            // Same marker worldgen leaves for block entities to create once the chunk is loaded
+                            CompoundTag marker = new CompoundTag();
+                            marker.putInt("x", x);
+                            marker.putInt("y", y);
+                            marker.putInt("z", z);
+                            marker.putString("id", "DUMMY");
+                            chunk.setBlockEntityNbt(marker);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (section != null) {
+                section.release();
+            }
+        }
+        
+        List<CompoundTag> chunkBlockEntities = blockEntities.join().get(chunkPos.toLong());
+        if (chunkBlockEntities != null) {
+            for (CompoundTag blockEntity : chunkBlockEntities) {
+                chunk.setBlockEntityNbt(blockEntity.copy());
+            }
+        }
+    }
+}
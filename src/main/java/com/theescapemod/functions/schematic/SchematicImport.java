@@ -31,6 +31,18 @@ public class SchematicImport {
     @SerializedName("include_entities")
     public boolean includeEntities = false;
     
+    /** Treat air and structure voids as "leave untouched" instead of pasting them */
+    @SerializedName("skip_air")
+    public boolean skipAir = false;
+    
+    /** Which palette to use for structure (.nbt) files that have several, like shipwrecks */
+    @SerializedName("palette")
+    public int palette = 0;
+    
+    /** Place blocks one by one with neighbour and shape updates instead of writing chunk sections directly */
+    @SerializedName("block_updates")
+    public boolean blockUpdates = false;
+    
     public SchematicImport() {}
     
     public SchematicImport(String filename, String dimension, int x, int y, int z) {
@@ -41,6 +53,13 @@ public class SchematicImport {
         this.z = z;
     }
     
+    /**
+     * Identifies the import across restarts, by file and placement.
+     */
+    public String getKey() {
+        return filename + "|" + dimension + "|" + x + "," + y + "," + z;
+    }
+    
     @Override
     public String toString() {
         return String.format("SchematicImport{filename='%s', dimension='%s', pos=[%d,%d,%d], enabled=%s}", 
@@ -0,0 +1,30 @@
+package com.theescapemod.functions.schematic;
+
+import com.theescapemod.functions.world.ChunkPreloader;
+import com.theescapemod.functions.world.WorldEditJob;
+
+/**
+ * A job that pastes schematic imports, with the status shown by {@code /temf schematics jobs}.
+ */
+public interface SchematicJob extends WorldEditJob {
+    
+    /**
+     * @return true while the schematics are still being read and decoded in the background
+     */
+    boolean isDecoding();
+    
+    /**
+     * @return true while waiting for the chunks under the schematics to load
+     */
+    boolean isLoadingChunks();
+    
+    /**
+     * @return the preloader once decoding is done, otherwise null
+     */
+    ChunkPreloader getPreloader();
+    
+    /**
+     * @return estimated seconds left, or -1 if there is no estimate yet
+     */
+    long getEtaSeconds();
+}
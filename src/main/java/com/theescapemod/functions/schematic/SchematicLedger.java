@@ -0,0 +1,103 @@
+package com.theescapemod.functions.schematic;
+
+import com.theescapemod.functions.TheEscapeModFunctions;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-world record of the schematic imports that have been fully pasted, keyed by
+ * {@link SchematicImport#getKey()}. Holding the content hash of the pasted file lets a
+ * restart skip imports that haven't changed, and re-apply only the difference for ones that have.
+ */
+public class SchematicLedger extends SavedData {
+    private static final String DATA_NAME = TheEscapeModFunctions.MODID + "_schematic_ledger";
+    
+    private final Map<String, AppliedImport> applied = new HashMap<>();
+    
+    public static SchematicLedger get(MinecraftServer server) {
+        return server.overworld().getDataStorage().computeIfAbsent(
+            new SavedData.Factory<>(SchematicLedger::new, SchematicLedger::load, null), DATA_NAME);
+    }
+    
+    /**
+     * @return what was last pasted for the import, or null if it never finished
+     */
+    public AppliedImport get(String importKey) {
+        return applied.get(importKey);
+    }
+    
+    public void put(String importKey, AppliedImport entry) {
+        if (!entry.equals(applied.put(importKey, entry))) {
+            setDirty();
+        }
+    }
+    
+    public void remove(String importKey) {
+        if (applied.remove(importKey) != null) {
+            setDirty();
+        }
+    }
+    
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider registries) {
+        CompoundTag imports = new CompoundTag();
+        for (Map.Entry<String, AppliedImport> entry : applied.entrySet()) {
+            imports.put(entry.getKey(), entry.getValue().save());
+        }
+        tag.put("Imports", imports);
+        return tag;
+    }
+    
+    private static SchematicLedger load(CompoundTag tag, HolderLookup.Provider registries) {
+        SchematicLedger ledger = new SchematicLedger();
+        CompoundTag imports = tag.getCompound("Imports");
+        for (String key : imports.getAllKeys()) {
+            ledger.applied.put(key, AppliedImport.load(imports.getCompound(key)));
+        }
+        return ledger;
+    }
+    
+    /**
+     * One pasted import. The palette and skip_air setting are kept because they change
+     * what gets pasted from the same file.
+     */
+    public record AppliedImport(String filename, String hash, String dimension, BlockPos pos, int palette, boolean skipAir) {
+        
+        /**
+         * Checks whether the import would paste exactly the same blocks again.
+         */
+        public boolean isSameContent(String currentHash, SchematicImport schematicImport) {
+            return hash.equals(currentHash) && isSameOptions(schematicImport);
+        }
+        
+        /**
+         * Checks whether the import reads the file the same way, so the versions can be compared.
+         */
+        public boolean isSameOptions(SchematicImport schematicImport) {
+            return palette == schematicImport.palette && skipAir == schematicImport.skipAir;
+        }
+        
+        CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putString("Filename", filename);
+            tag.putString("Hash", hash);
+            tag.putString("Dimension", dimension);
+            tag.put("Pos", NbtUtils.writeBlockPos(pos));
+            tag.putInt("Palette", palette);
+            tag.putBoolean("SkipAir", skipAir);
+            return tag;
+        }
+        
+        static AppliedImport load(CompoundTag tag) {
+            return new AppliedImport(tag.getString("Filename"), tag.getString("Hash"), tag.getString("Dimension"),
+                NbtUtils.readBlockPos(tag, "Pos").orElse(BlockPos.ZERO), tag.getInt("Palette"), tag.getBoolean("SkipAir"));
+        }
+    }
+}
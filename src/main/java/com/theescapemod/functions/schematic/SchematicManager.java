@@ -3,8 +3,12 @@ package com.theescapemod.functions.schematic;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.world.ChunkPreloader;
+import com.theescapemod.functions.world.VoidChunkGenerator;
+import com.theescapemod.functions.world.WorldEditJobScheduler;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import org.slf4j.Logger;
@@ -14,11 +18,21 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main manager for schematic import functionality.
  * Handles loading config, reading schematics, and placing them in worlds.
+ * Imports already pasted in a world are tracked by {@link SchematicLedger}, so each start
+ * only pastes imports that are new or whose file changed. Imports into a dimension generated by
+ * {@link VoidChunkGenerator} are written as its chunks generate, and only pasted into chunks that exist.
+ * Imports that share chunks are grouped by {@link ImportPlanner} and pasted together by a {@link MergedPasteJob}.
  */
 public class SchematicManager {
     private static final Logger LOGGER = LogUtils.getLogger();
@@ -28,8 +42,17 @@ public class SchematicManager {
     private static final String SCHEMATICS_DIR = "config/temf/schematics";
     private static final String CONFIG_FILE = "config/temf/schematics.json";
     
+    // Schematics with more positions than this are pasted straight from the file
+    private static final long STREAMING_PASTE_VOLUME = 64L * 1024 * 1024;
+    
     private static SchematicConfig config;
     
+    // Running paste job per import key
+    private static final Map<String, Integer> pasteJobs = new LinkedHashMap<>();
+    
+    // Background thread queueing decodes, see prefetchImports
+    private static volatile Thread prefetchThread;
+    
     /**
      * Initialize the schematic system - create directories and default config if needed.
      */
@@ -106,15 +129,143 @@ public class SchematicManager {
     }
     
     /**
-     * Execute all enabled schematic imports.
+     * Start reading and decoding every enabled import that will need pasting in the background.
+     * Called as the server starts, so the work overlaps with world loading. Does nothing while
+     * an earlier prefetch is still queueing; that one is handed the imports instead.
+     */
+    public static void prefetchImports(MinecraftServer server, boolean force) {
+        if (config == null || !config.enabled) {
+            return;
+        }
+        if (isPrefetching()) {
+            LOGGER.info("Schematic prefetch is already running, leaving the imports to it");
+            return;
+        }
+        
+        // Saved data is read here on the server thread; the background thread only sees these copies
+        List<SchematicImport> enabledImports = config.getEnabledImports();
+        SchematicLedger ledger = SchematicLedger.get(server);
+        SchematicPasteSavedData checkpoints = SchematicPasteSavedData.get(server);
+        Map<String, SchematicLedger.AppliedImport> applied = new HashMap<>();
+        Set<String> resuming = new HashSet<>();
+        for (SchematicImport schematicImport : enabledImports) {
+            String importKey = schematicImport.getKey();
+            if (ledger.get(importKey) != null) {
+                applied.put(importKey, ledger.get(importKey));
+            }
+            if (checkpoints.get(importKey) != null) {
+                resuming.add(importKey);
+            }
+        }
+        
+        // Probing headers and hashing touch every file, so even the queueing happens off the calling thread
+        prefetchThread = Thread.ofVirtual().name("TEMF Schematic Prefetch").start(() -> {
+            int queued = 0;
+            for (SchematicImport schematicImport : enabledImports) {
+                File schematicFile = findSchematicFile(schematicImport.filename);
+                if (schematicFile == null) {
+                    continue;
+                }
+                
+                // Hashing here also warms the index, so the server thread finds the hash ready
+                String hash = getHash(schematicFile);
+                boolean streamed = shouldStream(schematicFile);
+                SchematicLedger.AppliedImport previous = applied.get(schematicImport.getKey());
+                ImportMode mode = getImportMode(schematicImport, hash, previous,
+                    resuming.contains(schematicImport.getKey()), streamed, force);
+                if (mode == ImportMode.SKIP || streamed) {
+                    continue;
+                }
+                
+                if (mode == ImportMode.DELTA) {
+                    SchematicDecoder.prefetchDelta(schematicFile, schematicImport, previous.hash());
+                } else {
+                    SchematicDecoder.prefetch(schematicFile, schematicImport);
+                }
+                queued++;
+            }
+            LOGGER.info("Queued {} schematic imports for background decoding", queued);
+        });
+    }
+    
+    private static boolean isPrefetching() {
+        Thread thread = prefetchThread;
+        return thread != null && thread.isAlive();
+    }
+    
+    /**
+     * How an import gets pasted this time, based on what the ledger says was pasted before.
+     */
+    private enum ImportMode {
+        SKIP,
+        FULL,
+        DELTA
+    }
+    
+    private static ImportMode getImportMode(SchematicImport schematicImport, String hash, SchematicLedger.AppliedImport previous,
+                                            boolean resuming, boolean streamed, boolean force) {
+        if (force || hash == null || previous == null || !previous.isSameOptions(schematicImport)) {
+            return ImportMode.FULL;
+        }
+        if (previous.hash().equals(hash)) {
+            // A paste of unchanged content that is part way through was forced earlier; let it finish
+            return resuming ? ImportMode.FULL : ImportMode.SKIP;
+        }
+        // Only the difference is pasted while the earlier version is still compiled to compare against
+        if (!streamed && CompiledSchematicCache.isCompiled(previous.hash(), schematicImport.palette)) {
+            return ImportMode.DELTA;
+        }
+        return ImportMode.FULL;
+    }
+    
+    private static String getHash(File schematicFile) {
+        try {
+            return CompiledSchematicCache.getHash(schematicFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to hash {}, it will be pasted in full: {}", schematicFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Very large Sponge schematics never fit in memory as a whole, so they are streamed
+     * straight into the world instead of being decoded ahead of time.
+     */
+    private static boolean shouldStream(File schematicFile) {
+        return shouldStream(SchematicProbe.probe(schematicFile));
+    }
+    
+    private static boolean shouldStream(SchematicProbe.Info info) {
+        return info.isValid() && info.format().equals("Sponge") && info.getVolume() >= STREAMING_PASTE_VOLUME;
+    }
+    
+    /**
+     * Queue a paste job for every enabled schematic import that changed since it was last pasted.
      */
     public static void executeImports(MinecraftServer server) {
+        executeImports(server, false);
+    }
+    
+    /**
+     * Queue a paste job for every enabled schematic import.
+     * The jobs run within the world edit tick budget; see {@link #getPasteJobs()}.
+     * @param force paste every import in full, even those the ledger says are already in place
+     */
+    public static void executeImports(MinecraftServer server, boolean force) {
         LOGGER.info("=== SCHEMATIC IMPORT SYSTEM STARTING ===");
         LOGGER.info("Server instance: {}", server != null ? "Valid" : "NULL");
         LOGGER.info("Working directory: {}", System.getProperty("user.dir"));
         LOGGER.info("Config file path: {}", new File(CONFIG_FILE).getAbsolutePath());
         LOGGER.info("Schematics directory: {}", new File(SCHEMATICS_DIR).getAbsolutePath());
         
+        // Placements are registered again below from the current config; a disabled or empty
+        // config must not leave earlier ones writing into newly generated chunks
+        for (ServerLevel level : server.getAllLevels()) {
+            if (level.getChunkSource().getGenerator() instanceof VoidChunkGenerator generator) {
+                generator.clearPlacements();
+            }
+        }
+        
         if (config == null) {
             LOGGER.error("Schematic config is null! Trying to reload...");
             loadConfig();
@@ -149,97 +300,274 @@ public class SchematicManager {
         
         LOGGER.info("Starting execution of {} schematic imports", enabledImports.size());
         
-        for (int i = 0; i < enabledImports.size(); i++) {
-            SchematicImport schematicImport = enabledImports.get(i);
+        // Decodes queued by an earlier run are forgotten first, unless the prefetch started with the
+        // server is still queueing them for this run. Everything not yet queued then starts decoding
+        // in parallel while the first import waits.
+        if (!isPrefetching()) {
+            SchematicDecoder.clear();
+        }
+        prefetchImports(server, force);
+        
+        // Each import is resolved once; imports that share chunks are pasted together, or one
+        // after the other when one of them is streamed
+        Map<ServerLevel, List<ImportPlanner.ResolvedImport>> byLevel =
+            ImportPlanner.resolve(server, enabledImports, SchematicManager::findSchematicFile);
+        for (Map.Entry<ServerLevel, List<ImportPlanner.ResolvedImport>> entry : byLevel.entrySet()) {
+            List<List<ImportPlanner.ResolvedImport>> groups = ImportPlanner.groupOverlapping(entry.getValue());
             LOGGER.info("");
-            LOGGER.info(">>> Processing import {}/{}: {} <<<", i + 1, enabledImports.size(), schematicImport.filename);
-            executeImport(server, schematicImport);
+            LOGGER.info(">>> {}: {} imports in {} groups <<<",
+                       entry.getKey().dimension().location(), entry.getValue().size(), groups.size());
+            for (List<ImportPlanner.ResolvedImport> group : groups) {
+                if (group.size() == 1) {
+                    executeImport(group.get(0), force, true, -1);
+                } else if (group.stream().allMatch(SchematicManager::isMergeable)) {
+                    executeMergedImports(group, force);
+                } else {
+                    executeOrderedImports(group, force);
+                }
+            }
+        }
+        
+        // Imports removed from the config while part way through are not resumed
+        List<String> importKeys = new ArrayList<>();
+        for (SchematicImport schematicImport : enabledImports) {
+            importKeys.add(schematicImport.getKey());
+        }
+        int dropped = SchematicPasteSavedData.get(server).retainAll(importKeys);
+        if (dropped > 0) {
+            LOGGER.info("Dropped {} interrupted pastes of imports that are no longer enabled", dropped);
         }
         
         LOGGER.info("");
-        LOGGER.info("=== SCHEMATIC IMPORT SYSTEM COMPLETE ===");
+        LOGGER.info("=== SCHEMATIC IMPORTS QUEUED ===");
     }
     
     /**
-     * Execute a single schematic import.
+     * Queue the paste job for a single schematic import, resuming it if it was interrupted.
+     * @param allowGeneration hand imports into void dimensions to the generator; only safe when no
+     *                        other import writes the same chunks, as generation ignores their order
+     * @param afterJob id of a job that must end before this one starts, or -1
+     * @return id of the job pasting the import, or -1 if none was needed or it failed
      */
-    private static void executeImport(MinecraftServer server, SchematicImport schematicImport) {
+    private static int executeImport(ImportPlanner.ResolvedImport resolved, boolean force,
+                                     boolean allowGeneration, int afterJob) {
+        SchematicImport schematicImport = resolved.schematicImport();
+        File schematicFile = resolved.file();
+        ServerLevel level = resolved.level();
+        MinecraftServer server = level.getServer();
         try {
             LOGGER.info("--- Processing import: {} ---", schematicImport.filename);
-            LOGGER.info("Target dimension: {}", schematicImport.dimension);
+            LOGGER.info("Target dimension: {}", level.dimension().location());
             LOGGER.info("Target position: ({}, {}, {})", schematicImport.x, schematicImport.y, schematicImport.z);
+            LOGGER.info("Schematic file: {} ({} bytes)", schematicFile.getAbsolutePath(), schematicFile.length());
             
-            // Find the schematic file
-            File schematicFile = findSchematicFile(schematicImport.filename);
-            if (schematicFile == null) {
-                LOGGER.error("Schematic file not found: {}", schematicImport.filename);
-                LOGGER.error("Checked in directory: {}", new File(SCHEMATICS_DIR).getAbsolutePath());
-                LOGGER.info("Available files:");
-                File schematicsDir = new File(SCHEMATICS_DIR);
-                if (schematicsDir.exists()) {
-                    File[] files = schematicsDir.listFiles();
-                    if (files != null) {
-                        for (File file : files) {
-                            LOGGER.info("  - {}", file.getName());
-                        }
-                    }
-                }
-                return;
+            if (allowGeneration && isGenerationImport(resolved)) {
+                return executeGenerationImport(resolved, (VoidChunkGenerator) level.getChunkSource().getGenerator(), force);
             }
             
-            LOGGER.info("Found schematic file: {}", schematicFile.getAbsolutePath());
-            LOGGER.info("File size: {} bytes", schematicFile.length());
+            BlockPos targetPos = new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
+            String importKey = schematicImport.getKey();
+            Integer running = pasteJobs.get(importKey);
+            if (running != null && WorldEditJobScheduler.getJob(running) != null) {
+                LOGGER.info("Import is already being pasted as job #{}", running);
+                return running;
+            }
             
-            // Get the target dimension
-            ResourceLocation dimensionId = ResourceLocation.parse(schematicImport.dimension);
-            LOGGER.info("Parsed dimension ID: {}", dimensionId);
+            SchematicPasteSavedData data = SchematicPasteSavedData.get(server);
+            SchematicPasteSavedData.Checkpoint checkpoint = data.get(importKey);
+            SchematicLedger.AppliedImport previous = SchematicLedger.get(server).get(importKey);
+            String hash = getHash(schematicFile);
             
-            ServerLevel level = null;
-            LOGGER.info("Available dimensions:");
-            for (var key : server.levelKeys()) {
-                LOGGER.info("  - {}", key.location());
-                if (key.location().equals(dimensionId)) {
-                    level = server.getLevel(key);
-                    LOGGER.info("    ^ Found matching dimension!");
-                }
+            StreamingSchematicReader.Header header = shouldStream(resolved.info())
+                ? StreamingSchematicReader.tryReadHeader(schematicFile) : null;
+            if (header != null && !header.isSponge()) {
+                header = null;
             }
             
-            if (level == null) {
-                LOGGER.error("Dimension not found: {}", schematicImport.dimension);
-                return;
+            ImportMode mode = getImportMode(schematicImport, hash, previous, checkpoint != null, header != null, force);
+            if (mode == ImportMode.SKIP) {
+                LOGGER.info("Unchanged since it was last pasted, skipping");
+                return -1;
             }
+            boolean delta = mode == ImportMode.DELTA;
             
-            LOGGER.info("Target dimension found: {}", level.dimension().location());
-            
-            // Read the schematic
-            LOGGER.info("Reading schematic file...");
-            SimpleSchematic schematic = SchematicReader.readSchematic(schematicFile);
-            LOGGER.info("Schematic loaded: {}x{}x{} with {} blocks", 
-                       schematic.width, schematic.height, schematic.length, 
-                       schematic.getAllBlocks().size());
-            
-            // Paste the schematic
-            BlockPos targetPos = new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
-            LOGGER.info("Pasting schematic at world position: {}", targetPos);
-            
-            boolean success = SchematicPaster.pasteSchematic(
-                    level, 
-                    schematic, 
-                    targetPos, 
-                    schematicImport.replaceExisting, 
-                    schematicImport.includeEntities
-            );
+            // Pick up where an interrupted paste of the same file stopped
+            if (checkpoint != null && (!checkpoint.isSingle() || !checkpoint.matches(schematicFile, delta))) {
+                LOGGER.info("Schematic file changed since the last paste was interrupted, starting over");
+                data.remove(importKey);
+                checkpoint = null;
+            }
             
-            if (success) {
-                LOGGER.info("✓ Successfully imported schematic '{}' to {} at {}", 
-                           schematicImport.filename, schematicImport.dimension, targetPos);
+            CompletableFuture<SimpleSchematic> source = null;
+            if (header != null) {
+                LOGGER.info("Schematic is {}x{}x{}, streaming it into the world at {}",
+                           header.width, header.height, header.length, targetPos);
+            } else if (delta) {
+                LOGGER.info("Schematic changed since it was last pasted, re-applying the difference");
+                source = SchematicDecoder.prefetchDelta(schematicFile, schematicImport, previous.hash());
             } else {
-                LOGGER.error("✗ Failed to import schematic '{}'", schematicImport.filename);
+                // Usually decoded in the background already; the job waits for it without blocking a tick
+                source = SchematicDecoder.prefetch(schematicFile, schematicImport);
             }
             
+            SchematicPasteJob job = new SchematicPasteJob(
+                level, schematicFile, schematicImport, header, source, delta, hash, checkpoint);
+            int jobId = afterJob >= 0 ? WorldEditJobScheduler.submitAfter(afterJob, job) : WorldEditJobScheduler.submit(job);
+            pasteJobs.put(importKey, jobId);
+            LOGGER.info("Pasting schematic at world position {} as job #{}", targetPos, jobId);
+            return jobId;
+            
         } catch (Exception e) {
             LOGGER.error("Error executing schematic import '{}': {}", schematicImport.filename, e.getMessage(), e);
+            return -1;
+        }
+    }
+    
+    /**
+     * Queue overlapping imports that can't share one job, such as streamed ones, as jobs that each
+     * wait for the one before. As with {@link #executeMergedImports}, imports before the first one
+     * that changed are left alone and every one after it is written again in full, so the last
+     * one still wins where they overlap.
+     */
+    private static void executeOrderedImports(List<ImportPlanner.ResolvedImport> group, boolean force) {
+        LOGGER.info("Pasting {} overlapping imports in {} one after the other",
+                   group.size(), group.get(0).level().dimension().location());
+        int previousJob = -1;
+        boolean rewrite = force;
+        for (ImportPlanner.ResolvedImport resolved : group) {
+            int jobId = executeImport(resolved, rewrite, false, previousJob);
+            if (jobId >= 0) {
+                previousJob = jobId;
+                rewrite = true;
+            }
+        }
+    }
+    
+    /**
+     * Queue one job for imports that share chunks, so each chunk is written once. Imports before
+     * the first one that changed are left alone; from there on every import is written again in
+     * full, so the last one still wins where they overlap.
+     */
+    private static void executeMergedImports(List<ImportPlanner.ResolvedImport> group, boolean force) {
+        ServerLevel level = group.get(0).level();
+        MinecraftServer server = level.getServer();
+        for (ImportPlanner.ResolvedImport resolved : group) {
+            Integer running = pasteJobs.get(resolved.schematicImport().getKey());
+            if (running != null && WorldEditJobScheduler.getJob(running) != null) {
+                LOGGER.info("{} is already being pasted as job #{}, leaving its group alone",
+                           resolved.schematicImport().filename, running);
+                return;
+            }
+        }
+        
+        SchematicLedger ledger = SchematicLedger.get(server);
+        SchematicPasteSavedData checkpoints = SchematicPasteSavedData.get(server);
+        List<MergedPasteJob.Member> members = new ArrayList<>();
+        for (ImportPlanner.ResolvedImport resolved : group) {
+            SchematicImport schematicImport = resolved.schematicImport();
+            String hash = getHash(resolved.file());
+            SchematicLedger.AppliedImport previous = ledger.get(schematicImport.getKey());
+            ImportMode mode = getImportMode(schematicImport, hash, previous,
+                checkpoints.get(schematicImport.getKey()) != null, false, force);
+            if (members.isEmpty() && mode == ImportMode.SKIP) {
+                continue;
+            }
+            
+            // A delta only holds up while nothing before it in the group is rewritten
+            boolean delta = members.isEmpty() && mode == ImportMode.DELTA;
+            CompletableFuture<SimpleSchematic> source = delta
+                ? SchematicDecoder.prefetchDelta(resolved.file(), schematicImport, previous.hash())
+                : SchematicDecoder.prefetch(resolved.file(), schematicImport);
+            members.add(new MergedPasteJob.Member(schematicImport, resolved.file(), source, delta, hash));
+        }
+        
+        if (members.isEmpty()) {
+            LOGGER.info("None of the {} overlapping imports in {} changed since they were last pasted, skipping",
+                       group.size(), level.dimension().location());
+            return;
+        }
+        
+        int jobId = WorldEditJobScheduler.submit(new MergedPasteJob(level, members));
+        for (MergedPasteJob.Member member : members) {
+            pasteJobs.put(member.schematicImport().getKey(), jobId);
+        }
+        LOGGER.info("Pasting {} of {} overlapping imports in {} together as job #{}",
+                   members.size(), group.size(), level.dimension().location(), jobId);
+    }
+    
+    /**
+     * Imports into a void dimension are written by its generator as chunks generate,
+     * unless they overlap another import.
+     */
+    private static boolean isGenerationImport(ImportPlanner.ResolvedImport resolved) {
+        return resolved.level().getChunkSource().getGenerator() instanceof VoidChunkGenerator
+            && !resolved.schematicImport().blockUpdates && !shouldStream(resolved.info());
+    }
+    
+    /**
+     * Streamed imports are read straight from their file and never pasted together with others.
+     */
+    private static boolean isMergeable(ImportPlanner.ResolvedImport resolved) {
+        return !shouldStream(resolved.info());
+    }
+    
+    /**
+     * Hand an import into a void dimension to its generator, so chunks that generate later receive
+     * their slice of it for free, then queue a paste of the chunks that already exist.
+     * The placement is registered on every start, since unvisited chunks may still need it.
+     */
+    private static int executeGenerationImport(ImportPlanner.ResolvedImport resolved, VoidChunkGenerator generator, boolean force) {
+        ServerLevel level = resolved.level();
+        File schematicFile = resolved.file();
+        SchematicImport schematicImport = resolved.schematicImport();
+        SchematicProbe.Info info = resolved.info();
+        
+        // Registered before looking for existing chunks, so every chunk either generates with it or is found below
+        SchematicGenerationPlacement placement = new SchematicGenerationPlacement(
+            schematicFile, schematicImport, info.width(), info.length());
+        generator.addPlacement(placement);
+        LOGGER.info("Chunks of {} that generate from now on will include this schematic", level.dimension().location());
+        
+        String importKey = schematicImport.getKey();
+        Integer running = pasteJobs.get(importKey);
+        if (running != null && WorldEditJobScheduler.getJob(running) != null) {
+            LOGGER.info("Import is already being pasted into existing chunks as job #{}", running);
+            return running;
+        }
+        
+        MinecraftServer server = level.getServer();
+        SchematicPasteSavedData data = SchematicPasteSavedData.get(server);
+        SchematicPasteSavedData.Checkpoint checkpoint = data.get(importKey);
+        SchematicLedger.AppliedImport previous = SchematicLedger.get(server).get(importKey);
+        String hash = getHash(schematicFile);
+        
+        ImportMode mode = getImportMode(schematicImport, hash, previous, checkpoint != null, false, force);
+        if (mode == ImportMode.SKIP) {
+            LOGGER.info("Unchanged since it was last pasted, nothing to update in existing chunks");
+            return -1;
         }
+        boolean delta = mode == ImportMode.DELTA;
+        if (checkpoint != null && (!checkpoint.isSingle() || !checkpoint.matches(schematicFile, delta))) {
+            LOGGER.info("Schematic file changed since the last paste was interrupted, starting over");
+            data.remove(importKey);
+            checkpoint = null;
+        }
+        
+        // A delta is also right for chunks that generated with the new version in the meantime
+        BlockPos targetPos = new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
+        CompletableFuture<SimpleSchematic> content = delta
+            ? SchematicDecoder.prefetchDelta(schematicFile, schematicImport, previous.hash())
+            : placement.getSchematic();
+        LongArrayList footprint = ChunkPreloader.getFootprint(targetPos.getX(), targetPos.getZ(),
+            targetPos.getX() + info.width() - 1, targetPos.getZ() + info.length() - 1);
+        CompletableFuture<SimpleSchematic> source = ChunkPreloader.findGenerated(level, footprint)
+            .thenCombine(content, (generated, schematic) -> schematic.retainChunks(targetPos, generated));
+        
+        int jobId = WorldEditJobScheduler.submit(new SchematicPasteJob(
+            level, schematicFile, schematicImport, null, source, delta, hash, checkpoint));
+        pasteJobs.put(importKey, jobId);
+        LOGGER.info("Pasting schematic into the existing chunks of {} as job #{}", level.dimension().location(), jobId);
+        return jobId;
     }
     
     /**
@@ -256,7 +584,7 @@ public class SchematicManager {
         
         // Try common extensions if not specified
         if (!filename.contains(".")) {
-            String[] extensions = {".schem", ".schematic", ".nbt"};
+            String[] extensions = {".schem", ".schematic", ".nbt", ".litematic"};
             for (String ext : extensions) {
                 schematicFile = new File(schematicsDir, filename + ext);
                 if (schematicFile.exists()) {
@@ -279,7 +607,8 @@ public class SchematicManager {
             File[] files = schematicsDir.listFiles((dir, name) -> 
                 name.toLowerCase().endsWith(".schem") || 
                 name.toLowerCase().endsWith(".schematic") ||
-                name.toLowerCase().endsWith(".nbt"));
+                name.toLowerCase().endsWith(".nbt") ||
+                name.toLowerCase().endsWith(".litematic"));
             
             if (files != null) {
                 for (File file : files) {
@@ -291,6 +620,48 @@ public class SchematicManager {
         return schematics;
     }
     
+    /**
+     * Read the header of a schematic in the schematics directory without loading its blocks.
+     * @return the header summary, or null if no such file exists
+     */
+    public static SchematicProbe.Info probeSchematic(String filename) {
+        File schematicFile = findSchematicFile(filename);
+        return schematicFile != null ? SchematicProbe.probe(schematicFile) : null;
+    }
+    
+    /**
+     * Probes several schematics on a background thread, as a new or changed file is still
+     * inflated in full to reach the fields after its block data.
+     * @return header summaries in the given order; files that don't exist map to null
+     */
+    public static CompletableFuture<Map<String, SchematicProbe.Info>> probeSchematicsAsync(List<String> filenames) {
+        List<String> names = List.copyOf(filenames);
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, SchematicProbe.Info> infos = new LinkedHashMap<>();
+            for (String filename : names) {
+                infos.put(filename, probeSchematic(filename));
+            }
+            return infos;
+        }, Util.ioPool());
+    }
+    
+    /**
+     * @return running paste jobs keyed by import, in the order they were queued
+     */
+    public static Map<String, Integer> getPasteJobs() {
+        Map<String, Integer> jobs = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : pasteJobs.entrySet()) {
+            if (WorldEditJobScheduler.getJob(entry.getValue()) != null) {
+                jobs.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return jobs;
+    }
+    
+    static void onPasteJobStopped(String importKey) {
+        pasteJobs.remove(importKey);
+    }
+    
     /**
      * Reload the configuration from disk.
      */
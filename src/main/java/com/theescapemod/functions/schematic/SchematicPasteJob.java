@@ -0,0 +1,439 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.world.ChunkPreloader;
+import com.theescapemod.functions.world.ChunkSectionWriter;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Pastes one schematic import a few sections at a time within the world edit tick budget.
+ * Nothing is written to a chunk until it has been loaded in the background by a
+ * {@link ChunkPreloader}, which holds the chunks under the schematic a window at a time and
+ * moves on as the paste reaches chunks past the window. Decoded schematics
+ * are pasted column by column of sections; very large Sponge schematics are read on a
+ * background thread and handed over section by section. After every tick the position is
+ * written to {@link SchematicPasteSavedData}, so a restart resumes the paste instead of
+ * starting over. Once the paste finishes it is recorded in the {@link SchematicLedger}.
+ */
+public class SchematicPasteJob implements SchematicJob {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    // Sections the background reader may decode ahead of the paste when streaming
+    private static final int STREAM_QUEUE_SIZE = 64;
+    
+    private final ServerLevel level;
+    private final File schematicFile;
+    private final SchematicImport schematicImport;
+    private final String importKey;
+    private final BlockPos targetPos;
+    private final boolean replaceExisting;
+    private final boolean delta;
+    private final String contentHash;
+    private final SchematicPaster.PasteStats stats = new SchematicPaster.PasteStats();
+    
+    // Set for decoded pastes
+    private CompletableFuture<SimpleSchematic> decoding;
+    private SimpleSchematic schematic;
+    
+    // Set for streamed pastes
+    private final StreamingSchematicReader.Header header;
+    private BlockingQueue<StreamedSection> streamedSections;
+    private Thread reader;
+    private volatile boolean readerDone;
+    private volatile Throwable readerError;
+    private volatile boolean stopped;
+    
+    private int sectionsX;
+    private int sectionsY;
+    private int sectionsZ;
+    private int totalSections;
+    private List<CompoundTag> blockEntities = List.of();
+    private int nextSection;
+    private int nextBlockEntity;
+    private int blockEntitiesPlaced;
+    private boolean failed;
+    private ChunkPreloader preloader;
+    private boolean pasting;
+    
+    // When pasting started in this run, and the progress it started from, for the ETA
+    private long startNanos;
+    private float startProgress;
+    
+    /**
+     * @param header the file's header if it should be streamed, or null to paste the decoded schematic
+     * @param source the decoded schematic once ready, or null when streaming
+     * @param delta true if the source only holds what changed since the last paste; existing blocks are then always replaced
+     * @param contentHash hash of the file, recorded in the ledger once the paste finishes; may be null
+     * @param checkpoint where an earlier run stopped, or null to start from the beginning
+     */
+    public SchematicPasteJob(ServerLevel level, File schematicFile, SchematicImport schematicImport,
+                             StreamingSchematicReader.Header header, CompletableFuture<SimpleSchematic> source,
+                             boolean delta, String contentHash, SchematicPasteSavedData.Checkpoint checkpoint) {
+        this.level = level;
+        this.schematicFile = schematicFile;
+        this.schematicImport = schematicImport;
+        this.importKey = schematicImport.getKey();
+        this.targetPos = new BlockPos(schematicImport.x, schematicImport.y, schematicImport.z);
+        this.replaceExisting = delta || schematicImport.replaceExisting;
+        this.delta = delta;
+        this.contentHash = contentHash;
+        this.header = header;
+        
+        if (checkpoint != null) {
+            nextSection = checkpoint.nextSection();
+            nextBlockEntity = checkpoint.nextBlockEntity();
+            LOGGER.info("Resuming paste of {} at section {}", schematicFile.getName(), nextSection);
+        }
+        
+        if (header != null) {
+            setDimensions(header.width, header.height, header.length);
+            if (schematicImport.includeEntities) {
+                blockEntities = header.blockEntities;
+            }
+            startReader();
+            startPreload();
+        } else {
+            decoding = source;
+        }
+    }
+    
+    @Override
+    public String getDescription() {
+        return (delta ? "Update " : "Paste ") + schematicImport.filename + " in " + schematicImport.dimension;
+    }
+    
+    /**
+     * @return true while the schematic is still being read and decoded in the background
+     */
+    @Override
+    public boolean isDecoding() {
+        return schematic == null && header == null;
+    }
+    
+    /**
+     * @return true while waiting for the chunks under the schematic to load
+     */
+    @Override
+    public boolean isLoadingChunks() {
+        return preloader != null && (!pasting || preloader.isWaiting());
+    }
+    
+    @Override
+    public ChunkPreloader getPreloader() {
+        return preloader;
+    }
+    
+    @Override
+    public float getProgress() {
+        int total = totalSections + blockEntities.size();
+        return total == 0 ? 0.0f : (float) (nextSection + nextBlockEntity) / total;
+    }
+    
+    /**
+     * Estimates the remaining time from the rate of progress since the paste started in this run.
+     * @return estimated seconds left, or -1 if there is no estimate yet
+     */
+    @Override
+    public long getEtaSeconds() {
+        float progress = getProgress();
+        if (!pasting || progress <= startProgress) {
+            return -1;
+        }
+        double elapsed = (System.nanoTime() - startNanos) / 1.0E9;
+        return (long) (elapsed * (1.0f - progress) / (progress - startProgress));
+    }
+    
+    @Override
+    public boolean tick(long deadlineNanos) {
+        if (isDecoding()) {
+            if (!decoding.isDone()) {
+                return false;
+            }
+            try {
+                schematic = decoding.join();
+            } catch (CompletionException | CancellationException e) {
+                LOGGER.error("Failed to decode schematic {}: {}", schematicFile.getName(),
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                failed = true;
+                return true;
+            }
+            decoding = null;
+            setDimensions(schematic.width, schematic.height, schematic.length);
+            if (schematicImport.includeEntities) {
+                blockEntities = schematic.getBlockEntities();
+            }
+            startPreload();
+        }
+        
+        if (!pasting) {
+            if (!isNextLoaded() || !preloader.isLoaded()) {
+                return false;
+            }
+            LOGGER.info("Loaded {} chunks for {}, pasting", preloader.getChunkCount(), schematicFile.getName());
+            startPasting();
+        }
+        
+        ChunkSectionWriter writer = schematicImport.blockUpdates ? null : new ChunkSectionWriter(level);
+        try {
+            while (nextSection < totalSections && System.nanoTime() < deadlineNanos) {
+                boolean pasted = schematic != null ? pasteNextDecodedSection(writer) : pasteNextStreamedSection(writer);
+                if (!pasted) {
+                    break;
+                }
+            }
+            
+            // Block entities go last, once the blocks that hold them are in place
+            while (!failed && nextSection >= totalSections && nextBlockEntity < blockEntities.size()
+                    && System.nanoTime() < deadlineNanos) {
+                if (!isBlockEntityLoaded(blockEntities.get(nextBlockEntity))) {
+                    break;
+                }
+                if (SchematicPaster.placeBlockEntity(level, blockEntities.get(nextBlockEntity), targetPos)) {
+                    blockEntitiesPlaced++;
+                }
+                nextBlockEntity++;
+            }
+        } finally {
+            if (writer != null) {
+                writer.finish();
+            }
+        }
+        
+        if (failed) {
+            return true;
+        }
+        boolean finished = nextSection >= totalSections && nextBlockEntity >= blockEntities.size();
+        if (!finished) {
+            SchematicPasteSavedData.get(level.getServer()).put(importKey, new SchematicPasteSavedData.Checkpoint(
+                schematicFile.length(), schematicFile.lastModified(), delta, nextSection, nextBlockEntity));
+        }
+        return finished;
+    }
+    
+    /**
+     * Decoded sections are visited one column at a time, so writes stay grouped by chunk.
+     * @return false if the chunks of the next section are still loading
+     */
+    private boolean pasteNextDecodedSection(ChunkSectionWriter writer) {
+        int sectionY = nextSection % sectionsY;
+        int sectionZ = (nextSection / sectionsY) % sectionsZ;
+        int sectionX = nextSection / (sectionsY * sectionsZ);
+        SchematicSection section = schematic.getSection(sectionX, sectionY, sectionZ);
+        if (section != null) {
+            if (!isSectionLoaded(sectionX, sectionZ)) {
+                return false;
+            }
+            SchematicPaster.pasteSection(level, writer, section, sectionX, sectionY, sectionZ,
+                targetPos, replaceExisting, stats);
+        }
+        nextSection++;
+        return true;
+    }
+    
+    /**
+     * Pastes the next section the background reader has ready.
+     * @return false if none is ready yet, or its chunks are still loading
+     */
+    private boolean pasteNextStreamedSection(ChunkSectionWriter writer) {
+        // Check done before peeking, so a section queued just before the reader ended isn't lost
+        boolean done = readerDone;
+        StreamedSection streamed = streamedSections.peek();
+        if (streamed == null) {
+            if (readerError != null) {
+                LOGGER.error("Failed to stream schematic {}: {}", schematicFile.getName(), readerError.getMessage());
+                failed = true;
+                nextSection = totalSections;
+            } else if (done) {
+                // Sections after the last one read were empty
+                nextSection = totalSections;
+            }
+            return false;
+        }
+        if (!isSectionLoaded(streamed.sectionX(), streamed.sectionZ())) {
+            return false;
+        }
+        streamedSections.poll();
+        
+        SchematicPaster.pasteSection(level, writer, streamed.section(), streamed.sectionX(), streamed.sectionY(), streamed.sectionZ(),
+            targetPos, replaceExisting, stats);
+        nextSection = streamed.index() + 1;
+        return true;
+    }
+    
+    private void setDimensions(int width, int height, int length) {
+        sectionsX = (width + 15) >> 4;
+        sectionsY = (height + 15) >> 4;
+        sectionsZ = (length + 15) >> 4;
+        totalSections = sectionsX * sectionsY * sectionsZ;
+    }
+    
+    /**
+     * Prepares to load every chunk under the schematic, in the order the paste will reach them.
+     * Decoded schematics skip chunks under empty columns of sections. Block entities are
+     * placed in the same chunk order, so they don't send the preload window back and forth.
+     */
+    private void startPreload() {
+        LongArrayList footprint = schematic != null
+            ? schematic.getChunkFootprint(targetPos)
+            : ChunkPreloader.getFootprint(targetPos.getX(), targetPos.getZ(),
+                targetPos.getX() + (sectionsX << 4) - 1, targetPos.getZ() + (sectionsZ << 4) - 1);
+        preloader = new ChunkPreloader(level, footprint);
+        
+        if (blockEntities.size() > 1) {
+            List<CompoundTag> sorted = new ArrayList<>(blockEntities);
+            sorted.sort(Comparator.comparingInt((CompoundTag tag) -> getBlockEntityChunk(tag).x)
+                .thenComparingInt(tag -> getBlockEntityChunk(tag).z));
+            blockEntities = sorted;
+        }
+    }
+    
+    /**
+     * Moves the preload window to where the paste continues, so a resumed paste doesn't first
+     * wait for chunks it already wrote.
+     * @return true once the chunks of the next section or block entity are loaded
+     */
+    private boolean isNextLoaded() {
+        if (nextSection < totalSections) {
+            boolean decoded = schematic != null;
+            int sectionX = decoded ? nextSection / (sectionsY * sectionsZ) : nextSection % sectionsX;
+            int sectionZ = decoded ? (nextSection / sectionsY) % sectionsZ : (nextSection / sectionsX) % sectionsZ;
+            return isSectionLoaded(sectionX, sectionZ);
+        }
+        return nextBlockEntity >= blockEntities.size() || isBlockEntityLoaded(blockEntities.get(nextBlockEntity));
+    }
+    
+    private boolean isSectionLoaded(int sectionX, int sectionZ) {
+        int minX = targetPos.getX() + (sectionX << 4);
+        int minZ = targetPos.getZ() + (sectionZ << 4);
+        return preloader.isLoaded(minX >> 4, minZ >> 4, (minX + 15) >> 4, (minZ + 15) >> 4);
+    }
+    
+    private boolean isBlockEntityLoaded(CompoundTag blockEntity) {
+        ChunkPos chunkPos = getBlockEntityChunk(blockEntity);
+        return preloader.isLoaded(chunkPos.x, chunkPos.z, chunkPos.x, chunkPos.z);
+    }
+    
+    private ChunkPos getBlockEntityChunk(CompoundTag blockEntity) {
+        BlockPos relativePos = SchematicPaster.getBlockEntityPos(blockEntity);
+        return new ChunkPos(relativePos != null ? targetPos.offset(relativePos) : targetPos);
+    }
+    
+    private void startPasting() {
+        pasting = true;
+        startNanos = System.nanoTime();
+        startProgress = getProgress();
+    }
+    
+    /**
+     * Reads the file on a virtual thread, queueing the sections from the checkpoint onwards.
+     * Sections arrive in file order: layer by layer of sections, Z then X within a layer.
+     */
+    private void startReader() {
+        streamedSections = new ArrayBlockingQueue<>(STREAM_QUEUE_SIZE);
+        int resumeFrom = nextSection;
+        reader = Thread.ofVirtual().name("TEMF Schematic Stream " + schematicFile.getName()).start(() -> {
+            try {
+                StreamingSchematicReader.streamSections(schematicFile, header, (sectionX, sectionY, sectionZ, section) -> {
+                    int index = (sectionY * sectionsZ + sectionZ) * sectionsX + sectionX;
+                    if (stopped) {
+                        throw new CancellationException();
+                    }
+                    if (index < resumeFrom) {
+                        return;
+                    }
+                    if (schematicImport.skipAir) {
+                        section.removeIf(SimpleSchematic::isSkippedInSparseMode);
+                        if (section.isEmpty()) {
+                            return;
+                        }
+                    }
+                    try {
+                        streamedSections.put(new StreamedSection(index, sectionX, sectionY, sectionZ, SectionPool.intern(section)));
+                    } catch (InterruptedException e) {
+                        throw new CancellationException();
+                    }
+                });
+            } catch (CancellationException e) {
+                // Stopped by the job
+            } catch (Throwable t) {
+                readerError = t;
+            } finally {
+                readerDone = true;
+            }
+        });
+    }
+    
+    private void stopReader() {
+        stopped = true;
+        if (reader != null) {
+            reader.interrupt();
+        }
+    }
+    
+    private void releaseChunks() {
+        if (preloader != null) {
+            preloader.release();
+        }
+    }
+    
+    @Override
+    public void onStopped(boolean cancelled) {
+        stopReader();
+        releaseChunks();
+        SchematicManager.onPasteJobStopped(importKey);
+        SchematicPasteSavedData.get(level.getServer()).remove(importKey);
+        
+        if (cancelled) {
+            LOGGER.info("Cancelled paste of {} at {}% ({} blocks placed)",
+                schematicFile.getName(), (int) (getProgress() * 100), stats.placed);
+        } else if (failed) {
+            LOGGER.error("✗ Failed to import schematic '{}'", schematicImport.filename);
+        } else {
+            if (contentHash != null) {
+                SchematicLedger.get(level.getServer()).put(importKey, new SchematicLedger.AppliedImport(
+                    schematicImport.filename, contentHash, schematicImport.dimension, targetPos,
+                    schematicImport.palette, schematicImport.skipAir));
+            }
+            LOGGER.info("✓ Imported schematic '{}' to {} at {}: {} blocks placed, {} skipped, {} failed, {} block entities",
+                schematicImport.filename, schematicImport.dimension, targetPos,
+                stats.placed, stats.skipped, stats.failed, blockEntitiesPlaced);
+        }
+    }
+    
+    @Override
+    public void onFailed(Exception error) {
+        // The checkpoint of the last complete tick stays and no ledger entry is written, so the next start retries
+        stopReader();
+        releaseChunks();
+        SchematicManager.onPasteJobStopped(importKey);
+        LOGGER.error("✗ Failed to import schematic '{}' at {}%, it resumes on the next start",
+            schematicImport.filename, (int) (getProgress() * 100));
+    }
+    
+    @Override
+    public void onShutdown() {
+        // The checkpoint stays, so the next start picks up from here
+        stopReader();
+        releaseChunks();
+        SchematicManager.onPasteJobStopped(importKey);
+        LOGGER.info("Paused paste of {} at {}% for shutdown", schematicFile.getName(), (int) (getProgress() * 100));
+    }
+    
+    private record StreamedSection(int index, int sectionX, int sectionY, int sectionZ, SchematicSection section) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.theescapemod.functions.schematic;
+
+import com.theescapemod.functions.TheEscapeModFunctions;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checkpoints of the schematic paste jobs that are still running, keyed by {@link SchematicImport#getKey()}.
+ * Kept with the overworld's data so an import interrupted by a restart resumes where it stopped.
+ */
+public class SchematicPasteSavedData extends SavedData {
+    private static final String DATA_NAME = TheEscapeModFunctions.MODID + "_schematic_pastes";
+    
+    private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+    
+    public static SchematicPasteSavedData get(MinecraftServer server) {
+        return server.overworld().getDataStorage().computeIfAbsent(
+            new SavedData.Factory<>(SchematicPasteSavedData::new, SchematicPasteSavedData::load, null), DATA_NAME);
+    }
+    
+    /**
+     * @return how far the import got, or null if it isn't part way through
+     */
+    public Checkpoint get(String importKey) {
+        return checkpoints.get(importKey);
+    }
+    
+    public void put(String importKey, Checkpoint checkpoint) {
+        if (!checkpoint.equals(checkpoints.put(importKey, checkpoint))) {
+            setDirty();
+        }
+    }
+    
+    public void remove(String importKey) {
+        if (checkpoints.remove(importKey) != null) {
+            setDirty();
+        }
+    }
+    
+    /**
+     * Drops checkpoints of imports that are no longer configured.
+     * @return number of checkpoints dropped
+     */
+    public int retainAll(Collection<String> importKeys) {
+        int before = checkpoints.size();
+        if (checkpoints.keySet().retainAll(importKeys)) {
+            setDirty();
+        }
+        return before - checkpoints.size();
+    }
+    
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider registries) {
+        CompoundTag jobs = new CompoundTag();
+        for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+            jobs.put(entry.getKey(), entry.getValue().save());
+        }
+        tag.put("Jobs", jobs);
+        return tag;
+    }
+    
+    private static SchematicPasteSavedData load(CompoundTag tag, HolderLookup.Provider registries) {
+        SchematicPasteSavedData data = new SchematicPasteSavedData();
+        CompoundTag jobs = tag.getCompound("Jobs");
+        for (String key : jobs.getAllKeys()) {
+            data.checkpoints.put(key, Checkpoint.load(jobs.getCompound(key)));
+        }
+        return data;
+    }
+    
+    /**
+     * Position of a paste job: the next section and block entity to place, along with the
+     * size and modification time of the file so a replaced schematic starts over, and whether
+     * the job was pasting only what changed since the last version. For imports pasted
+     * together by a {@link MergedPasteJob} the position is its next chunk and import instead,
+     * and {@code group} names the imports of that job; it is empty for a paste on its own.
+     */
+    public record Checkpoint(long fileSize, long fileModified, boolean delta, int nextSection, int nextBlockEntity,
+                             String group) {
+        
+        public Checkpoint(long fileSize, long fileModified, boolean delta, int nextSection, int nextBlockEntity) {
+            this(fileSize, fileModified, delta, nextSection, nextBlockEntity, "");
+        }
+        
+        /**
+         * Checks whether the checkpoint was taken by the same kind of paste of this version of the file.
+         */
+        public boolean matches(File file, boolean delta) {
+            return file.length() == fileSize && file.lastModified() == fileModified && this.delta == delta;
+        }
+        
+        /**
+         * @return true if the checkpoint was taken by a paste of this import on its own
+         */
+        public boolean isSingle() {
+            return group.isEmpty();
+        }
+        
+        CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putLong("FileSize", fileSize);
+            tag.putLong("FileModified", fileModified);
+            tag.putBoolean("Delta", delta);
+            tag.putInt("NextSection", nextSection);
+            tag.putInt("NextBlockEntity", nextBlockEntity);
+            if (!group.isEmpty()) {
+                tag.putString("Group", group);
+            }
+            return tag;
+        }
+        
+        static Checkpoint load(CompoundTag tag) {
+            return new Checkpoint(tag.getLong("FileSize"), tag.getLong("FileModified"), tag.getBoolean("Delta"),
+                tag.getInt("NextSection"), tag.getInt("NextBlockEntity"), tag.getString("Group"));
+        }
+    }
+}
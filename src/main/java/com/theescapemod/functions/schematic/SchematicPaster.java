@@ -5,61 +5,60 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import com.theescapemod.functions.world.ChunkSectionWriter;
 
-import java.util.Map;
+import java.io.File;
 
 import com.mojang.logging.LogUtils;
 import org.slf4j.Logger;
 
 /**
  * Handles placing a SimpleSchematic into a world at a specified location.
+ * By default blocks are written straight into chunk sections through a {@link ChunkSectionWriter},
+ * with heightmaps, lighting and clients updated once per chunk afterwards. Imports that need
+ * neighbour and shape updates can ask for the slower block-by-block mode instead.
+ * The whole-schematic methods here finish in one call; configured imports go through
+ * {@link SchematicPasteJob} so they are spread across ticks.
  */
 public class SchematicPaster {
     private static final Logger LOGGER = LogUtils.getLogger();
     
     /**
-     * Paste a schematic into a world at the specified position.
+     * Paste a schematic into a world at the specified position, writing chunk sections directly.
      */
     public static boolean pasteSchematic(ServerLevel level, SimpleSchematic schematic, BlockPos targetPos, boolean replaceExisting, boolean includeBlockEntities) {
+        return pasteSchematic(level, schematic, targetPos, replaceExisting, includeBlockEntities, false);
+    }
+    
+    /**
+     * Paste a schematic into a world at the specified position.
+     * @param blockUpdates place every block with {@code Level.setBlock} so neighbours react to it
+     */
+    public static boolean pasteSchematic(ServerLevel level, SimpleSchematic schematic, BlockPos targetPos, boolean replaceExisting,
+                                         boolean includeBlockEntities, boolean blockUpdates) {
         LOGGER.info("=== PASTING SCHEMATIC ===");
         LOGGER.info("Target position: {}", targetPos);
         LOGGER.info("Dimension: {}", level.dimension().location());
         LOGGER.info("Replace existing: {}", replaceExisting);
         LOGGER.info("Include block entities: {}", includeBlockEntities);
+        LOGGER.info("Block updates: {}", blockUpdates);
         LOGGER.info("Schematic size: {}x{}x{}", schematic.width, schematic.height, schematic.length);
-        LOGGER.info("Total blocks to place: {}", schematic.getAllBlocks().size());
+        LOGGER.info("Total blocks to place: {}", schematic.getBlockCount());
         
-        int blocksPlaced = 0;
+        PasteStats stats = new PasteStats();
+        ChunkSectionWriter writer = blockUpdates ? null : new ChunkSectionWriter(level);
         int blockEntitiesPlaced = 0;
-        int blocksSkipped = 0;
-        int blocksFailed = 0;
         
         try {
-            // Place blocks
-            for (Map.Entry<BlockPos, BlockState> entry : schematic.getAllBlocks().entrySet()) {
-                BlockPos relativePos = entry.getKey();
-                BlockState blockState = entry.getValue();
-                
-                // Calculate world position
-                BlockPos worldPos = targetPos.offset(relativePos);
-                
-                // Check if we should replace existing blocks
-                if (!replaceExisting && !level.isEmptyBlock(worldPos)) {
-                    blocksSkipped++;
-                    continue;
-                }
-                
-                // Place the block
-                boolean success = level.setBlock(worldPos, blockState, 3); // 3 = UPDATE_ALL
-                if (success) {
-                    blocksPlaced++;
-                    if (blocksPlaced <= 5) { // Log first few blocks for debugging
-                        LOGGER.debug("Placed block {} at {} (relative: {})", blockState, worldPos, relativePos);
-                    }
-                } else {
-                    blocksFailed++;
-                    if (blocksFailed <= 5) { // Log first few failures
-                        LOGGER.warn("Failed to place block {} at {}", blockState, worldPos);
+            // Place blocks one column of sections at a time so writes are grouped by chunk
+            for (int sectionX = 0; sectionX < schematic.getSectionsX(); sectionX++) {
+                for (int sectionZ = 0; sectionZ < schematic.getSectionsZ(); sectionZ++) {
+                    for (int sectionY = 0; sectionY < schematic.getSectionsY(); sectionY++) {
+                        SchematicSection section = schematic.getSection(sectionX, sectionY, sectionZ);
+                        if (section != null) {
+                            pasteSection(level, writer, section, sectionX, sectionY, sectionZ, targetPos, replaceExisting, stats);
+                        }
                     }
                 }
             }
@@ -74,45 +73,228 @@ public class SchematicPaster {
                 }
             }
             
+            if (writer != null) {
+                LOGGER.info("Updated {} chunks", writer.finish());
+            }
+            
             LOGGER.info("=== PASTE COMPLETE ===");
-            LOGGER.info("Blocks placed: {}", blocksPlaced);
-            LOGGER.info("Blocks skipped: {}", blocksSkipped);
-            LOGGER.info("Blocks failed: {}", blocksFailed);
+            LOGGER.info("Blocks placed: {}", stats.placed);
+            LOGGER.info("Blocks skipped: {}", stats.skipped);
+            LOGGER.info("Blocks failed: {}", stats.failed);
             LOGGER.info("Block entities placed: {}", blockEntitiesPlaced);
             
-            return blocksPlaced > 0 || blockEntitiesPlaced > 0;
+            return stats.placed > 0 || blockEntitiesPlaced > 0;
             
         } catch (Exception e) {
             LOGGER.error("Error pasting schematic: {}", e.getMessage(), e);
+            if (writer != null) {
+                // Whatever was written before the error still needs lighting and sending
+                writer.finish();
+            }
             return false;
         }
     }
     
     /**
-     * Place a single block entity from NBT data.
+     * Paste a Sponge schematic straight from its file, one section at a time, without
+     * ever holding the whole schematic in memory. Used for very large builds.
      */
-    private static boolean placeBlockEntity(ServerLevel level, CompoundTag blockEntityTag, BlockPos basePos) {
+    public static boolean pasteStreaming(ServerLevel level, File schematicFile, StreamingSchematicReader.Header header,
+                                         BlockPos targetPos, boolean replaceExisting, boolean includeBlockEntities,
+                                         boolean skipAir, boolean blockUpdates) {
+        LOGGER.info("=== STREAM PASTING SCHEMATIC ===");
+        LOGGER.info("Target position: {}", targetPos);
+        LOGGER.info("Dimension: {}", level.dimension().location());
+        LOGGER.info("Schematic size: {}x{}x{}", header.width, header.height, header.length);
+        
+        PasteStats stats = new PasteStats();
+        ChunkSectionWriter writer = blockUpdates ? null : new ChunkSectionWriter(level);
+        int blockEntitiesPlaced = 0;
+        
         try {
-            // Get position from NBT
-            BlockPos relativePos;
-            
-            if (blockEntityTag.contains("Pos")) {
-                // Sponge format - array of [x, y, z]
-                int[] pos = blockEntityTag.getIntArray("Pos");
-                if (pos.length >= 3) {
-                    relativePos = new BlockPos(pos[0], pos[1], pos[2]);
+            StreamingSchematicReader.streamSections(schematicFile, header, (sectionX, sectionY, sectionZ, section) -> {
+                if (skipAir) {
+                    section.removeIf(SimpleSchematic::isSkippedInSparseMode);
+                    if (section.isEmpty()) {
+                        return;
+                    }
+                }
+                // Repeated sections then share one converted chunk section container
+                pasteSection(level, writer, SectionPool.intern(section), sectionX, sectionY, sectionZ, targetPos, replaceExisting, stats);
+            });
+            
+            if (includeBlockEntities) {
+                LOGGER.info("Placing {} block entities...", header.blockEntities.size());
+                for (CompoundTag blockEntityTag : header.blockEntities) {
+                    if (placeBlockEntity(level, blockEntityTag, targetPos)) {
+                        blockEntitiesPlaced++;
+                    }
+                }
+            }
+            
+            if (writer != null) {
+                LOGGER.info("Updated {} chunks", writer.finish());
+            }
+            
+            LOGGER.info("=== STREAM PASTE COMPLETE ===");
+            LOGGER.info("Blocks placed: {}", stats.placed);
+            LOGGER.info("Blocks skipped: {}", stats.skipped);
+            LOGGER.info("Blocks failed: {}", stats.failed);
+            LOGGER.info("Block entities placed: {}", blockEntitiesPlaced);
+            
+            return stats.placed > 0 || blockEntitiesPlaced > 0;
+            
+        } catch (Exception e) {
+            LOGGER.error("Error stream pasting schematic: {}", e.getMessage(), e);
+            if (writer != null) {
+                // Whatever was written before the error still needs lighting and sending
+                writer.finish();
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Place the blocks of one schematic section, through the writer when one is given.
+     */
+    static void pasteSection(ServerLevel level, ChunkSectionWriter writer, SchematicSection section,
+                             int sectionX, int sectionY, int sectionZ,
+                             BlockPos targetPos, boolean replaceExisting, PasteStats stats) {
+        pasteSection(level, writer, section, sectionX, sectionY, sectionZ, targetPos, replaceExisting, stats,
+            Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Place the blocks of one schematic section that lie within the given columns.
+     */
+    static void pasteSection(ServerLevel level, ChunkSectionWriter writer, SchematicSection section,
+                             int sectionX, int sectionY, int sectionZ,
+                             BlockPos targetPos, boolean replaceExisting, PasteStats stats,
+                             int minX, int minZ, int maxX, int maxZ) {
+        BlockPos.MutableBlockPos worldPos = new BlockPos.MutableBlockPos();
+        int baseX = targetPos.getX() + (sectionX << 4);
+        int baseY = targetPos.getY() + (sectionY << 4);
+        int baseZ = targetPos.getZ() + (sectionZ << 4);
+        
+        // A full section lining up with a chunk section is copied over in one go
+        if (writer != null && section.isFull() && ((baseX | baseY | baseZ) & 15) == 0
+                && minX <= baseX && minZ <= baseZ && maxX >= baseX + 15 && maxZ >= baseZ + 15
+                && writer.replaceSection(baseX, baseY, baseZ, section.getChunkStates(), !replaceExisting)) {
+            stats.placed += section.getBlockCount();
+            return;
+        }
+        
+        for (int index = 0; index < SchematicSection.VOLUME; index++) {
+            BlockState blockState = section.get(index);
+            if (blockState == null) {
+                continue;
+            }
+            
+            // Calculate world position
+            worldPos.set(baseX + (index & 15), baseY + (index >> 8), baseZ + ((index >> 4) & 15));
+            if (worldPos.getX() < minX || worldPos.getX() > maxX || worldPos.getZ() < minZ || worldPos.getZ() > maxZ) {
+                continue;
+            }
+            
+            boolean success;
+            if (writer != null) {
+                if (level.isOutsideBuildHeight(worldPos)) {
+                    success = false;
                 } else {
-                    LOGGER.warn("Invalid Pos array in block entity: length {}", pos.length);
-                    return false;
+                    // An all-air target section needs no per-block check at all
+                    if (!replaceExisting) {
+                        LevelChunkSection target = writer.getSection(worldPos.getX(), worldPos.getY(), worldPos.getZ());
+                        if (!target.hasOnlyAir()
+                                && !target.getBlockState(worldPos.getX() & 15, worldPos.getY() & 15, worldPos.getZ() & 15).isAir()) {
+                            stats.skipped++;
+                            continue;
+                        }
+                    }
+                    // An unchanged block still counts as placed, it already holds the right state
+                    writer.setBlock(worldPos.getX(), worldPos.getY(), worldPos.getZ(), blockState);
+                    success = true;
                 }
-            } else if (blockEntityTag.contains("x") && blockEntityTag.contains("y") && blockEntityTag.contains("z")) {
-                // MCEdit format - individual x, y, z tags
-                int x = blockEntityTag.getInt("x");
-                int y = blockEntityTag.getInt("y");
-                int z = blockEntityTag.getInt("z");
-                relativePos = new BlockPos(x, y, z);
             } else {
-                LOGGER.warn("Block entity missing position data");
+                // Check if we should replace existing blocks
+                if (!replaceExisting && !level.isEmptyBlock(worldPos)) {
+                    stats.skipped++;
+                    continue;
+                }
+                
+                // Place the block
+                success = level.setBlock(worldPos, blockState, 3); // 3 = UPDATE_ALL
+            }
+            
+            if (success) {
+                stats.placed++;
+                if (stats.placed <= 5) { // Log first few blocks for debugging
+                    LOGGER.debug("Placed block {} at {}", blockState, worldPos);
+                }
+            } else {
+                stats.failed++;
+                if (stats.failed <= 5) { // Log first few failures
+                    LOGGER.warn("Failed to place block {} at {}", blockState, worldPos);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Place the blocks of a schematic that fall inside one chunk, through the writer when one is given.
+     */
+    static void pasteChunk(ServerLevel level, ChunkSectionWriter writer, SimpleSchematic schematic,
+                           int chunkX, int chunkZ, BlockPos targetPos, boolean replaceExisting, PasteStats stats) {
+        int minX = Math.max(chunkX << 4, targetPos.getX());
+        int maxX = Math.min((chunkX << 4) + 15, targetPos.getX() + schematic.width - 1);
+        int minZ = Math.max(chunkZ << 4, targetPos.getZ());
+        int maxZ = Math.min((chunkZ << 4) + 15, targetPos.getZ() + schematic.length - 1);
+        if (minX > maxX || minZ > maxZ) {
+            return;
+        }
+        
+        // An unaligned chunk spans up to two sections along each axis
+        for (int sectionY = 0; sectionY < schematic.getSectionsY(); sectionY++) {
+            for (int sectionZ = (minZ - targetPos.getZ()) >> 4; sectionZ <= (maxZ - targetPos.getZ()) >> 4; sectionZ++) {
+                for (int sectionX = (minX - targetPos.getX()) >> 4; sectionX <= (maxX - targetPos.getX()) >> 4; sectionX++) {
+                    SchematicSection section = schematic.getSection(sectionX, sectionY, sectionZ);
+                    if (section != null) {
+                        pasteSection(level, writer, section, sectionX, sectionY, sectionZ,
+                            targetPos, replaceExisting, stats, minX, minZ, maxX, maxZ);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Read a block entity's position within the schematic from its NBT data.
+     * @return the relative position, or null if the tag has none
+     */
+    static BlockPos getBlockEntityPos(CompoundTag blockEntityTag) {
+        if (blockEntityTag.contains("Pos")) {
+            // Sponge format - array of [x, y, z]
+            int[] pos = blockEntityTag.getIntArray("Pos");
+            if (pos.length >= 3) {
+                return new BlockPos(pos[0], pos[1], pos[2]);
+            }
+            LOGGER.warn("Invalid Pos array in block entity: length {}", pos.length);
+            return null;
+        }
+        if (blockEntityTag.contains("x") && blockEntityTag.contains("y") && blockEntityTag.contains("z")) {
+            // MCEdit format - individual x, y, z tags
+            return new BlockPos(blockEntityTag.getInt("x"), blockEntityTag.getInt("y"), blockEntityTag.getInt("z"));
+        }
+        LOGGER.warn("Block entity missing position data");
+        return null;
+    }
+    
+    /**
+     * Place a single block entity from NBT data.
+     */
+    static boolean placeBlockEntity(ServerLevel level, CompoundTag blockEntityTag, BlockPos basePos) {
+        try {
+            BlockPos relativePos = getBlockEntityPos(blockEntityTag);
+            if (relativePos == null) {
                 return false;
             }
             
@@ -159,4 +341,13 @@ public class SchematicPaster {
         BlockPos max = min.offset(schematic.width - 1, schematic.height - 1, schematic.length - 1);
         return new BlockPos[]{min, max};
     }
+    
+    /**
+     * Running totals of one paste.
+     */
+    static class PasteStats {
+        int placed;
+        int skipped;
+        int failed;
+    }
 }
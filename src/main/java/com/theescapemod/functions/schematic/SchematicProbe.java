@@ -0,0 +1,358 @@
+package com.theescapemod.functions.schematic;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads only the header fields of a schematic (format, size, offset, palette size and
+ * block entity count) by walking its NBT as a stream. Block data is skipped without being
+ * stored, and results are remembered per file size and modification time, so listing a
+ * folder of schematics doesn't read any of them in full.
+ */
+public class SchematicProbe {
+    private static final Map<String, CachedInfo> CACHE = new HashMap<>();
+    
+    /**
+     * Header summary of one schematic file. An unreadable file has a non-null error.
+     */
+    public record Info(String format, int version, int width, int height, int length, BlockPos offset,
+                       int paletteSize, int blockEntityCount, int regionCount, String error) {
+        
+        public boolean isValid() {
+            return error == null && !"Unknown".equals(format) && width > 0 && height > 0 && length > 0;
+        }
+        
+        public long getVolume() {
+            return (long) width * height * length;
+        }
+        
+        /**
+         * @return a one-line description for listings
+         */
+        public String describe() {
+            if (error != null) {
+                return "unreadable: " + error;
+            }
+            StringBuilder builder = new StringBuilder(format);
+            if (version > 0) {
+                builder.append(" v").append(version);
+            }
+            builder.append(", ").append(width).append('x').append(height).append('x').append(length);
+            if (paletteSize >= 0) {
+                builder.append(", ").append(paletteSize).append(" states");
+            }
+            builder.append(", ").append(blockEntityCount).append(" block entities");
+            if (regionCount > 1) {
+                builder.append(", ").append(regionCount).append(" regions");
+            }
+            return builder.toString();
+        }
+    }
+    
+    /**
+     * Probes a file, reusing the previous result if the file hasn't changed since.
+     */
+    public static Info probe(File file) {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+        synchronized (CACHE) {
+            CachedInfo cached = CACHE.get(key);
+            if (cached != null && cached.size == size && cached.modified == modified) {
+                return cached.info;
+            }
+        }
+        
+        Info info;
+        try {
+            info = readHeader(file);
+        } catch (IOException | RuntimeException e) {
+            info = new Info("Unknown", 0, 0, 0, 0, BlockPos.ZERO, -1, 0, 0, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        
+        synchronized (CACHE) {
+            CACHE.put(key, new CachedInfo(size, modified, info));
+        }
+        return info;
+    }
+    
+    private static Info readHeader(File file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            if (in.readByte() != Tag.TAG_COMPOUND) {
+                throw new IOException("not an NBT file");
+            }
+            in.readUTF();
+            
+            State state = new State();
+            walkCompound(in, state, "");
+            return state.toInfo();
+        }
+    }
+    
+    private static DataInputStream open(File file) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file));
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        InputStream stream = first == 0x1F && second == 0x8B
+            ? new BufferedInputStream(new GZIPInputStream(buffered))
+            : buffered;
+        return new DataInputStream(stream);
+    }
+    
+    /**
+     * Header fields collected while walking the file.
+     */
+    private static class State {
+        int version = -1;
+        int width;
+        int height;
+        int length;
+        BlockPos offset = BlockPos.ZERO;
+        int paletteSize = -1;
+        int blockEntities;
+        int regions;
+        int structurePalettes;
+        boolean spongePalette;
+        boolean mcEdit;
+        boolean structure;
+        
+        Info toInfo() {
+            String format;
+            if (regions > 0) {
+                format = "Litematica";
+            } else if (structure) {
+                format = structurePalettes > 1 ? "Structure (" + structurePalettes + " palettes)" : "Structure";
+            } else if (spongePalette && version > 0) {
+                format = "Sponge";
+            } else if (mcEdit) {
+                format = "MCEdit";
+            } else {
+                format = "Unknown";
+            }
+            return new Info(format, structure ? 0 : version, width, height, length, offset,
+                           paletteSize, blockEntities, regions, null);
+        }
+    }
+    
+    private static void walkCompound(DataInputStream in, State state, String parent) throws IOException {
+        byte type;
+        while ((type = in.readByte()) != Tag.TAG_END) {
+            String name = in.readUTF();
+            visit(in, state, parent, name, type);
+        }
+    }
+    
+    private static void visit(DataInputStream in, State state, String parent, String name, byte type) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        
+        if (type == Tag.TAG_COMPOUND) {
+            if (parent.equals("Regions")) {
+                state.regions++;
+                walkCompound(in, state, "Region");
+                return;
+            }
+            switch (name) {
+                case "Schematic", "Blocks", "Metadata", "Regions" -> walkCompound(in, state, name);
+                case "Palette" -> {
+                    state.spongePalette = true;
+                    state.paletteSize = countCompoundEntries(in);
+                }
+                case "EnclosingSize" -> {
+                    int[] size = readVector(in);
+                    state.width = size[0];
+                    state.height = size[1];
+                    state.length = size[2];
+                }
+                default -> TagTypes.getType(type).skip(in, accounter);
+            }
+            return;
+        }
+        
+        if (type == Tag.TAG_LIST) {
+            switch (name) {
+                case "BlockEntities", "TileEntities" -> state.blockEntities += skipList(in, accounter);
+                case "BlockStatePalette" -> state.paletteSize = Math.max(0, state.paletteSize) + skipList(in, accounter);
+                case "palette" -> {
+                    state.structure = true;
+                    state.paletteSize = skipList(in, accounter);
+                    state.structurePalettes = Math.max(state.structurePalettes, 1);
+                }
+                case "palettes" -> readStructurePalettes(in, state, accounter);
+                case "size" -> {
+                    int[] size = readIntList(in, accounter);
+                    if (size.length >= 3) {
+                        state.width = size[0];
+                        state.height = size[1];
+                        state.length = size[2];
+                    }
+                }
+                case "blocks" -> {
+                    state.structure = true;
+                    state.blockEntities += countStructureBlockEntities(in, accounter);
+                }
+                default -> TagTypes.getType(type).skip(in, accounter);
+            }
+            return;
+        }
+        
+        switch (name) {
+            case "Version" -> state.version = readNumber(in, type, accounter);
+            case "Width" -> state.width = readNumber(in, type, accounter) & 0xFFFF;
+            case "Height" -> state.height = readNumber(in, type, accounter) & 0xFFFF;
+            case "Length" -> state.length = readNumber(in, type, accounter) & 0xFFFF;
+            case "Offset" -> {
+                if (type == Tag.TAG_INT_ARRAY) {
+                    int count = in.readInt();
+                    int[] offset = new int[Math.max(3, count)];
+                    for (int i = 0; i < count; i++) {
+                        offset[i] = in.readInt();
+                    }
+                    state.offset = new BlockPos(offset[0], offset[1], offset[2]);
+                } else {
+                    TagTypes.getType(type).skip(in, accounter);
+                }
+            }
+            case "Materials" -> {
+                if (type == Tag.TAG_STRING) {
+                    state.mcEdit = "Alpha".equals(in.readUTF());
+                } else {
+                    TagTypes.getType(type).skip(in, accounter);
+                }
+            }
+            default -> TagTypes.getType(type).skip(in, accounter);
+        }
+    }
+    
+    private static int readNumber(DataInputStream in, byte type, NbtAccounter accounter) throws IOException {
+        return switch (type) {
+            case Tag.TAG_BYTE -> in.readByte();
+            case Tag.TAG_SHORT -> in.readShort();
+            case Tag.TAG_INT -> in.readInt();
+            default -> {
+                TagTypes.getType(type).skip(in, accounter);
+                yield 0;
+            }
+        };
+    }
+    
+    private static int countCompoundEntries(DataInputStream in) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        int count = 0;
+        byte type;
+        while ((type = in.readByte()) != Tag.TAG_END) {
+            in.readUTF();
+            TagTypes.getType(type).skip(in, accounter);
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Reads an {x, y, z} compound of ints.
+     */
+    private static int[] readVector(DataInputStream in) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        int[] vector = new int[3];
+        byte type;
+        while ((type = in.readByte()) != Tag.TAG_END) {
+            String name = in.readUTF();
+            int axis = switch (name) {
+                case "x" -> 0;
+                case "y" -> 1;
+                case "z" -> 2;
+                default -> -1;
+            };
+            int value = readNumber(in, type, accounter);
+            if (axis >= 0) {
+                vector[axis] = value;
+            }
+        }
+        return vector;
+    }
+    
+    /**
+     * Skips a list's elements.
+     * @return the number of elements
+     */
+    private static int skipList(DataInputStream in, NbtAccounter accounter) throws IOException {
+        byte elementType = in.readByte();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            TagTypes.getType(elementType).skip(in, accounter);
+        }
+        return Math.max(0, count);
+    }
+    
+    private static int[] readIntList(DataInputStream in, NbtAccounter accounter) throws IOException {
+        byte elementType = in.readByte();
+        int count = Math.max(0, in.readInt());
+        if (elementType != Tag.TAG_INT) {
+            for (int i = 0; i < count; i++) {
+                TagTypes.getType(elementType).skip(in, accounter);
+            }
+            return new int[0];
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+    
+    private static void readStructurePalettes(DataInputStream in, State state, NbtAccounter accounter) throws IOException {
+        state.structure = true;
+        byte elementType = in.readByte();
+        int count = Math.max(0, in.readInt());
+        state.structurePalettes = count;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 && elementType == Tag.TAG_LIST) {
+                state.paletteSize = skipList(in, accounter);
+            } else {
+                TagTypes.getType(elementType).skip(in, accounter);
+            }
+        }
+    }
+    
+    /**
+     * Counts the entries of a structure template's block list that carry block entity data.
+     */
+    private static int countStructureBlockEntities(DataInputStream in, NbtAccounter accounter) throws IOException {
+        byte elementType = in.readByte();
+        int count = Math.max(0, in.readInt());
+        if (elementType != Tag.TAG_COMPOUND) {
+            for (int i = 0; i < count; i++) {
+                TagTypes.getType(elementType).skip(in, accounter);
+            }
+            return 0;
+        }
+        
+        int blockEntities = 0;
+        for (int i = 0; i < count; i++) {
+            byte type;
+            while ((type = in.readByte()) != Tag.TAG_END) {
+                if ("nbt".equals(in.readUTF())) {
+                    blockEntities++;
+                }
+                TagTypes.getType(type).skip(in, accounter);
+            }
+        }
+        return blockEntities;
+    }
+    
+    private record CachedInfo(long size, long modified, Info info) {
+    }
+}
@@ -3,31 +3,49 @@ package com.theescapemod.functions.schematic;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.util.datafix.DataFixTypes;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.util.datafix.fixes.References;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.SharedConstants;
+import com.mojang.serialization.Dynamic;
 import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Map;
-import java.util.HashMap;
 
 import net.minecraft.nbt.NbtAccounter;
 import com.mojang.logging.LogUtils;
 import org.slf4j.Logger;
 
 /**
- * Reads schematic files in various formats (Sponge v1/v2/v3, MCEdit)
+ * Reads schematic files in various formats (Sponge v1/v2/v3, MCEdit, Litematica,
+ * vanilla structure templates)
  * and converts them to our simplified SimpleSchematic format.
  */
 public class SchematicReader {
     private static final Logger LOGGER = LogUtils.getLogger();
+    // Palette ids are dense in practice; anything past this is a corrupt file
+    private static final int MAX_PALETTE_ID = 1 << 20;
     
     /**
      * Read a schematic file and return a SimpleSchematic object.
      * Automatically detects the format based on the NBT structure.
      */
     public static SimpleSchematic readSchematic(File schematicFile) throws IOException {
+        return readSchematic(schematicFile, 0);
+    }
+    
+    /**
+     * Read a schematic file, using the given palette if it is a structure file with several.
+     */
+    public static SimpleSchematic readSchematic(File schematicFile, int structurePalette) throws IOException {
         if (!schematicFile.exists()) {
             throw new IOException("Schematic file does not exist: " + schematicFile.getAbsolutePath());
         }
@@ -37,6 +55,13 @@ public class SchematicReader {
         LOGGER.info("Size: {} bytes", schematicFile.length());
         LOGGER.info("Path: {}", schematicFile.getAbsolutePath());
         
+        // Sponge schematics are streamed straight into sections without building an NBT tree
+        StreamingSchematicReader.Header header = StreamingSchematicReader.tryReadHeader(schematicFile);
+        if (header != null && header.isSponge()) {
+            LOGGER.info("Detected Sponge Schematic v{}, streaming block data", header.version);
+            return StreamingSchematicReader.read(schematicFile, header);
+        }
+        
         try (FileInputStream fis = new FileInputStream(schematicFile)) {
             LOGGER.info("Reading NBT data...");
             CompoundTag nbt = NbtIo.readCompressed(schematicFile.toPath(), NbtAccounter.unlimitedHeap());
@@ -70,6 +95,19 @@ public class SchematicReader {
                 }
             }
             
+            // Check for Litematica format
+            if (nbt.contains("Regions", Tag.TAG_COMPOUND) && nbt.contains("Metadata", Tag.TAG_COMPOUND)) {
+                LOGGER.info("Detected Litematica schematic v{}", nbt.getInt("Version"));
+                return readLitematic(nbt);
+            }
+            
+            // Check for vanilla structure template format (structure blocks)
+            if (nbt.contains("size", Tag.TAG_LIST) && nbt.contains("blocks", Tag.TAG_LIST)
+                    && (nbt.contains("palette", Tag.TAG_LIST) || nbt.contains("palettes", Tag.TAG_LIST))) {
+                LOGGER.info("Detected structure template");
+                return readStructureTemplate(nbt, structurePalette);
+            }
+            
             LOGGER.error("Unknown schematic format - NBT keys: {}", nbt.getAllKeys());
             throw new IOException("Unknown schematic format");
         } catch (Exception e) {
@@ -128,58 +166,282 @@ public class SchematicReader {
     /**
      * Read blocks from Sponge format (uses palette + data)
      */
-    private static void readSpongeBlocks(SimpleSchematic schematic, CompoundTag blocksTag, int width, int height, int length) {
-        // Read palette
-        CompoundTag paletteTag = blocksTag.getCompound("Palette");
-        Map<Integer, BlockState> palette = new HashMap<>();
+    private static void readSpongeBlocks(SimpleSchematic schematic, CompoundTag blocksTag, int width, int height, int length) throws IOException {
+        // Read palette into a plain array indexed by palette id
+        BlockState[] palette = readSpongePalette(blocksTag.getCompound("Palette"));
+        
+        // Read block data
+        byte[] blockData = blocksTag.getByteArray("BlockData");
+        if (blocksTag.contains("Data")) {
+            blockData = blocksTag.getByteArray("Data");
+        }
+        
+        // Decode VarInt encoded block data one row at a time, never holding every index at once
+        VarIntDecoder.Cursor cursor = new VarIntDecoder.Cursor(blockData);
+        int[] row = new int[width];
+        long total = (long) width * height * length;
+        long read = 0;
+        long unknownIds = 0;
+        boolean ended = false;
         
+        for (int y = 0; y < height && !ended; y++) {
+            for (int z = 0; z < length && !ended; z++) {
+                int decoded = cursor.next(row, width);
+                for (int x = 0; x < decoded; x++) {
+                    int paletteId = row[x];
+                    BlockState blockState = paletteId >= 0 && paletteId < palette.length ? palette[paletteId] : null;
+                    if (blockState != null) {
+                        schematic.setBlock(x, y, z, blockState);
+                    } else {
+                        unknownIds++;
+                    }
+                }
+                read += decoded;
+                if (decoded < width) {
+                    LOGGER.warn("Block data ended after {} of {} blocks", read, total);
+                    ended = true;
+                }
+            }
+        }
+        if (unknownIds > 0) {
+            LOGGER.warn("{} positions use palette ids with no known block state and were left unset", unknownIds);
+        }
+        
+        schematic.compact();
+        LOGGER.info("Loaded {} blocks from schematic", schematic.getBlockCount());
+    }
+    
+    /**
+     * Resolves a Sponge palette compound (state string to id) into an array indexed by id.
+     */
+    static BlockState[] readSpongePalette(CompoundTag paletteTag) throws IOException {
+        int maxId = -1;
+        for (String key : paletteTag.getAllKeys()) {
+            maxId = Math.max(maxId, paletteTag.getInt(key));
+        }
+        if (maxId >= MAX_PALETTE_ID) {
+            throw new IOException("Palette id " + maxId + " is out of range");
+        }
+        
+        BlockState[] palette = new BlockState[maxId + 1];
         for (String key : paletteTag.getAllKeys()) {
             int id = paletteTag.getInt(key);
+            if (id < 0) {
+                LOGGER.warn("Ignoring negative palette id {} for {}", id, key);
+                continue;
+            }
             BlockState blockState = SimpleSchematic.parseBlockState(key);
-            palette.put(id, blockState);
+            palette[id] = blockState;
             
-            if (palette.size() <= 10) { // Only log first few for debugging
+            if (id < 10) { // Only log first few for debugging
                 LOGGER.debug("Palette entry {}: {} -> {}", id, key, blockState);
             }
         }
         
-        LOGGER.info("Loaded palette with {} entries", palette.size());
+        LOGGER.info("Loaded palette with {} entries", paletteTag.size());
+        return palette;
+    }
+    
+    /**
+     * Read a vanilla structure template (.nbt from a structure block).
+     * Files with several palettes (like shipwrecks) share one block list; the palette
+     * index picks which set of states to use. Structure voids are left unset.
+     */
+    private static SimpleSchematic readStructureTemplate(CompoundTag nbt, int paletteIndex) throws IOException {
+        // Bring templates saved by older versions up to date, as vanilla does when loading them
+        int dataVersion = NbtUtils.getDataVersion(nbt, 500);
+        nbt = DataFixTypes.STRUCTURE.updateToCurrentVersion(DataFixers.getDataFixer(), nbt, dataVersion);
         
-        // Read block data
-        byte[] blockData = blocksTag.getByteArray("BlockData");
-        if (blocksTag.contains("Data")) {
-            blockData = blocksTag.getByteArray("Data");
+        ListTag size = nbt.getList("size", Tag.TAG_INT);
+        if (size.size() < 3) {
+            throw new IOException("Structure template has no valid size");
         }
+        int width = size.getInt(0);
+        int height = size.getInt(1);
+        int length = size.getInt(2);
+        LOGGER.info("Structure template dimensions: {}x{}x{}", width, height, length);
         
-        // Decode VarInt encoded block data
-        int dataIndex = 0;
+        ListTag paletteTag;
+        if (nbt.contains("palettes", Tag.TAG_LIST)) {
+            ListTag palettes = nbt.getList("palettes", Tag.TAG_LIST);
+            if (palettes.isEmpty()) {
+                throw new IOException("Structure template has an empty palettes list");
+            }
+            if (paletteIndex < 0 || paletteIndex >= palettes.size()) {
+                LOGGER.warn("Structure template has {} palettes, palette {} requested; using palette 0",
+                           palettes.size(), paletteIndex);
+                paletteIndex = 0;
+            }
+            paletteTag = palettes.getList(paletteIndex);
+            LOGGER.info("Using palette {} of {}", paletteIndex, palettes.size());
+        } else {
+            paletteTag = nbt.getList("palette", Tag.TAG_COMPOUND);
+        }
         
-        for (int y = 0; y < height; y++) {
-            for (int z = 0; z < length; z++) {
-                for (int x = 0; x < width; x++) {
-                    if (dataIndex >= blockData.length) break;
-                    
-                    // VarInt decoding
-                    int blockId = 0;
-                    int position = 0;
-                    byte currentByte;
-                    
-                    do {
-                        if (dataIndex >= blockData.length) break;
-                        currentByte = blockData[dataIndex++];
-                        blockId |= (currentByte & 0x7F) << position;
-                        position += 7;
-                    } while ((currentByte & 0x80) != 0 && position < 32);
+        BlockState[] palette = new BlockState[paletteTag.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), paletteTag.getCompound(i));
+        }
+        LOGGER.info("Loaded palette with {} entries", palette.length);
+        
+        SimpleSchematic schematic = new SimpleSchematic(width, height, length, BlockPos.ZERO);
+        ListTag blocks = nbt.getList("blocks", Tag.TAG_COMPOUND);
+        for (int i = 0; i < blocks.size(); i++) {
+            CompoundTag block = blocks.getCompound(i);
+            ListTag pos = block.getList("pos", Tag.TAG_INT);
+            int stateId = block.getInt("state");
+            if (pos.size() < 3 || stateId < 0 || stateId >= palette.length) {
+                continue;
+            }
+            
+            int x = pos.getInt(0);
+            int y = pos.getInt(1);
+            int z = pos.getInt(2);
+            BlockState blockState = palette[stateId];
+            if (blockState.is(Blocks.STRUCTURE_VOID)) {
+                continue;
+            }
+            schematic.setBlock(x, y, z, blockState);
+            
+            // Block entity data is stored without a position; the paster expects one
+            if (block.contains("nbt", Tag.TAG_COMPOUND)) {
+                CompoundTag blockEntity = block.getCompound("nbt").copy();
+                blockEntity.putIntArray("Pos", new int[] { x, y, z });
+                schematic.addBlockEntity(blockEntity);
+            }
+        }
+        
+        schematic.compact();
+        LOGGER.info("Loaded {} blocks from structure template", schematic.getBlockCount());
+        return schematic;
+    }
+    
+    /**
+     * Read a Litematica schematic. Every region is decoded straight from its bit-packed
+     * BlockStates array into one combined schematic covering all regions; where regions
+     * overlap, later ones win.
+     */
+    private static SimpleSchematic readLitematic(CompoundTag nbt) throws IOException {
+        int dataVersion = nbt.getInt("MinecraftDataVersion");
+        CompoundTag regions = nbt.getCompound("Regions");
+        if (regions.isEmpty()) {
+            throw new IOException("Litematica schematic has no regions");
+        }
+        
+        // Regions may have negative sizes, extending from their position towards negative coordinates
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (String name : regions.getAllKeys()) {
+            CompoundTag region = regions.getCompound(name);
+            BlockPos regionMin = getLitematicRegionMin(region);
+            BlockPos size = readLitematicVector(region.getCompound("Size"));
+            minX = Math.min(minX, regionMin.getX());
+            minY = Math.min(minY, regionMin.getY());
+            minZ = Math.min(minZ, regionMin.getZ());
+            maxX = Math.max(maxX, regionMin.getX() + Math.abs(size.getX()));
+            maxY = Math.max(maxY, regionMin.getY() + Math.abs(size.getY()));
+            maxZ = Math.max(maxZ, regionMin.getZ() + Math.abs(size.getZ()));
+        }
+        
+        int width = maxX - minX;
+        int height = maxY - minY;
+        int length = maxZ - minZ;
+        LOGGER.info("Litematica schematic: {} regions, combined dimensions {}x{}x{}", regions.size(), width, height, length);
+        SimpleSchematic schematic = new SimpleSchematic(width, height, length, new BlockPos(minX, minY, minZ));
+        
+        for (String name : regions.getAllKeys()) {
+            CompoundTag region = regions.getCompound(name);
+            BlockPos regionMin = getLitematicRegionMin(region);
+            readLitematicRegion(schematic, name, region, dataVersion,
+                               regionMin.getX() - minX, regionMin.getY() - minY, regionMin.getZ() - minZ);
+        }
+        
+        schematic.compact();
+        LOGGER.info("Loaded {} blocks from Litematica schematic", schematic.getBlockCount());
+        return schematic;
+    }
+    
+    private static void readLitematicRegion(SimpleSchematic schematic, String name, CompoundTag region, int dataVersion,
+                                            int originX, int originY, int originZ) throws IOException {
+        BlockPos size = readLitematicVector(region.getCompound("Size"));
+        int sizeX = Math.abs(size.getX());
+        int sizeY = Math.abs(size.getY());
+        int sizeZ = Math.abs(size.getZ());
+        long volume = (long) sizeX * sizeY * sizeZ;
+        
+        ListTag paletteTag = region.getList("BlockStatePalette", Tag.TAG_COMPOUND);
+        BlockState[] palette = new BlockState[paletteTag.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = readBlockStateTag(paletteTag.getCompound(i), dataVersion);
+        }
+        
+        // Values are packed back to back and may straddle two longs
+        int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(Math.max(1, palette.length - 1)));
+        long mask = (1L << bits) - 1;
+        long[] states = region.getLongArray("BlockStates");
+        if ((long) states.length * 64 < volume * bits) {
+            throw new IOException("Region '" + name + "' has too little block data for its size");
+        }
+        
+        long bitIndex = 0;
+        for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+                for (int x = 0; x < sizeX; x++) {
+                    int startLong = (int) (bitIndex >> 6);
+                    int startOffset = (int) (bitIndex & 63);
+                    long value = states[startLong] >>> startOffset;
+                    if (startOffset + bits > 64) {
+                        value |= states[startLong + 1] << (64 - startOffset);
+                    }
+                    bitIndex += bits;
                     
-                    BlockState blockState = palette.get(blockId);
-                    if (blockState != null) {
-                        schematic.setBlock(new BlockPos(x, y, z), blockState);
+                    int id = (int) (value & mask);
+                    if (id < palette.length) {
+                        schematic.setBlock(originX + x, originY + y, originZ + z, palette[id]);
                     }
                 }
             }
         }
         
-        LOGGER.info("Loaded {} blocks from schematic", schematic.getAllBlocks().size());
+        // Block entity positions are relative to the region's minimum corner
+        ListTag tileEntities = region.getList("TileEntities", Tag.TAG_COMPOUND);
+        for (int i = 0; i < tileEntities.size(); i++) {
+            CompoundTag blockEntity = tileEntities.getCompound(i).copy();
+            blockEntity.putInt("x", blockEntity.getInt("x") + originX);
+            blockEntity.putInt("y", blockEntity.getInt("y") + originY);
+            blockEntity.putInt("z", blockEntity.getInt("z") + originZ);
+            schematic.addBlockEntity(blockEntity);
+        }
+        
+        LOGGER.info("Region '{}': {}x{}x{} with {} palette entries", name, sizeX, sizeY, sizeZ, palette.length);
+    }
+    
+    private static BlockPos getLitematicRegionMin(CompoundTag region) {
+        BlockPos position = readLitematicVector(region.getCompound("Position"));
+        BlockPos size = readLitematicVector(region.getCompound("Size"));
+        return new BlockPos(
+            size.getX() < 0 ? position.getX() + size.getX() + 1 : position.getX(),
+            size.getY() < 0 ? position.getY() + size.getY() + 1 : position.getY(),
+            size.getZ() < 0 ? position.getZ() + size.getZ() + 1 : position.getZ());
+    }
+    
+    private static BlockPos readLitematicVector(CompoundTag tag) {
+        return new BlockPos(tag.getInt("x"), tag.getInt("y"), tag.getInt("z"));
+    }
+    
+    /**
+     * Reads a block state stored as {Name, Properties}, upgrading it first if it was saved by an older version.
+     */
+    private static BlockState readBlockStateTag(CompoundTag stateTag, int dataVersion) {
+        int currentVersion = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        if (dataVersion > 0 && dataVersion < currentVersion) {
+            Dynamic<Tag> fixed = DataFixers.getDataFixer().update(References.BLOCK_STATE,
+                new Dynamic<>(NbtOps.INSTANCE, stateTag), dataVersion, currentVersion);
+            if (fixed.getValue() instanceof CompoundTag fixedTag) {
+                stateTag = fixedTag;
+            }
+        }
+        return NbtUtils.readBlockState(BuiltInRegistries.BLOCK.asLookup(), stateTag);
     }
     
     /**
@@ -205,7 +467,10 @@ public class SchematicReader {
         }
         
         // Convert blocks
-        for (int index = 0; index < blocks.length; index++) {
+        LegacyBlockTable.UnknownIds unknownIds = new LegacyBlockTable.UnknownIds();
+        BlockState fallback = Blocks.STONE.defaultBlockState();
+        int blockCount = Math.min(blocks.length, Math.min(data.length, width * height * length));
+        for (int index = 0; index < blockCount; index++) {
             int x = index % width;
             int z = (index / width) % length;
             int y = index / (width * length);
@@ -222,9 +487,14 @@ public class SchematicReader {
                 }
             }
             
-            BlockState blockState = SimpleSchematic.legacyToBlockState(blockId, blockData);
-            schematic.setBlock(new BlockPos(x, y, z), blockState);
+            BlockState blockState = LegacyBlockTable.get(blockId, blockData);
+            if (blockState == null) {
+                unknownIds.add(blockId);
+                blockState = fallback;
+            }
+            schematic.setBlock(x, y, z, blockState);
         }
+        unknownIds.log("MCEdit schematic");
         
         // Read tile entities
         if (nbt.contains("TileEntities")) {
@@ -234,7 +504,8 @@ public class SchematicReader {
             }
         }
         
-        LOGGER.info("Loaded {} blocks from MCEdit schematic", schematic.getAllBlocks().size());
+        schematic.compact();
+        LOGGER.info("Loaded {} blocks from MCEdit schematic", schematic.getBlockCount());
         return schematic;
     }
 }
@@ -0,0 +1,451 @@
+package com.theescapemod.functions.schematic;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * One 16x16x16 section of a schematic, stored like vanilla's {@code PalettedContainer}:
+ * a local palette of block states plus a bit-packed {@code long[]} of palette indices.
+ * Palette index 0 means "no block" so unset positions cost nothing extra. A section
+ * whose positions all hold the same value (including all unset) keeps no data array.
+ * Indices are {@code (y << 8) | (z << 4) | x}, the same order as a chunk section.
+ * Sections interned by {@link SectionPool} are shared between schematics and can no longer be changed.
+ */
+public class SchematicSection {
+    public static final int SIZE = 16;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+    
+    private BlockState[] palette = new BlockState[] { null };
+    private int paletteSize = 1;
+    private final Reference2IntMap<BlockState> paletteIds = new Reference2IntOpenHashMap<>();
+    
+    // With zero bits every position holds palette[uniformId]
+    private int bits = 0;
+    private int uniformId = 0;
+    private int valuesPerLong;
+    private long mask;
+    private long[] data;
+    private int blockCount = 0;
+    
+    private boolean shared;
+    private int contentHash;
+    private boolean contentHashed;
+    // Built on first use for shared full sections, see getChunkStates
+    private PalettedContainer<BlockState> chunkStates;
+    
+    public static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+    
+    /**
+     * @return the state at a section-local index, or null if the position is unset
+     */
+    public BlockState get(int index) {
+        return palette[bits == 0 ? uniformId : getId(index)];
+    }
+    
+    public BlockState get(int x, int y, int z) {
+        return get(index(x, y, z));
+    }
+    
+    /**
+     * Sets the state at a section-local index; null clears the position.
+     */
+    public void set(int index, BlockState state) {
+        checkNotShared();
+        int id = idFor(state);
+        int oldId = bits == 0 ? uniformId : getId(index);
+        if (id == oldId) {
+            return;
+        }
+        if (bits == 0) {
+            resize(4);
+        }
+        
+        if (oldId == 0) {
+            blockCount++;
+        } else if (id == 0) {
+            blockCount--;
+        }
+        setId(index, id);
+    }
+    
+    public void set(int x, int y, int z, BlockState state) {
+        set(index(x, y, z), state);
+    }
+    
+    /**
+     * Sets every position to the same state; null clears the section.
+     */
+    public void fill(BlockState state) {
+        checkNotShared();
+        palette = state != null ? new BlockState[] { null, state } : new BlockState[] { null };
+        paletteSize = palette.length;
+        paletteIds.clear();
+        if (state != null) {
+            paletteIds.put(state, 1);
+        }
+        bits = 0;
+        uniformId = paletteSize - 1;
+        data = null;
+        blockCount = state != null ? VOLUME : 0;
+    }
+    
+    /**
+     * Clears every position whose state matches, leaving it unset.
+     * Only the palette is tested, so sections without a matching state cost nothing.
+     * @return number of positions cleared
+     */
+    public int removeIf(Predicate<BlockState> filter) {
+        checkNotShared();
+        boolean[] matches = new boolean[paletteSize];
+        boolean any = false;
+        for (int id = 1; id < paletteSize; id++) {
+            matches[id] = filter.test(palette[id]);
+            any |= matches[id];
+        }
+        if (!any) {
+            return 0;
+        }
+        
+        if (bits == 0) {
+            if (!matches[uniformId]) {
+                return 0;
+            }
+            int removed = blockCount;
+            fill(null);
+            return removed;
+        }
+        
+        int removed = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            if (matches[getId(i)]) {
+                setId(i, 0);
+                removed++;
+            }
+        }
+        blockCount -= removed;
+        compact();
+        return removed;
+    }
+    
+    /**
+     * Drops palette entries that are no longer used and narrows the packed array to match,
+     * collapsing the section to a single value when only one is left.
+     */
+    public void compact() {
+        if (bits == 0 || shared) {
+            return;
+        }
+        
+        int[] counts = new int[paletteSize];
+        for (int i = 0; i < VOLUME; i++) {
+            counts[getId(i)]++;
+        }
+        
+        int used = 0;
+        int lastUsed = 0;
+        for (int id = 0; id < paletteSize; id++) {
+            if (counts[id] > 0) {
+                used++;
+                lastUsed = id;
+            }
+        }
+        if (used == 1) {
+            fill(palette[lastUsed]);
+            return;
+        }
+        
+        // Keep index 0 as the unset marker and renumber the rest in order
+        int[] remap = new int[paletteSize];
+        BlockState[] newPalette = new BlockState[Math.max(2, used + (counts[0] > 0 ? 0 : 1))];
+        int newSize = 1;
+        paletteIds.clear();
+        for (int id = 1; id < paletteSize; id++) {
+            if (counts[id] > 0) {
+                remap[id] = newSize;
+                newPalette[newSize] = palette[id];
+                paletteIds.put(palette[id], newSize);
+                newSize++;
+            }
+        }
+        
+        int[] ids = new int[VOLUME];
+        for (int i = 0; i < VOLUME; i++) {
+            ids[i] = remap[getId(i)];
+        }
+        palette = newPalette;
+        paletteSize = newSize;
+        bits = 0;
+        uniformId = 0;
+        data = null;
+        resize(Math.max(4, 32 - Integer.numberOfLeadingZeros(newSize - 1)));
+        for (int i = 0; i < VOLUME; i++) {
+            if (ids[i] != 0) {
+                setId(i, ids[i]);
+            }
+        }
+    }
+    
+    /**
+     * @return the states this section's palette holds, excluding the unset marker
+     */
+    public List<BlockState> getPalette() {
+        return Arrays.asList(palette).subList(1, paletteSize);
+    }
+    
+    /**
+     * @return number of positions holding a block
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+    
+    public boolean isEmpty() {
+        return blockCount == 0;
+    }
+    
+    /**
+     * @return true if every position holds a block
+     */
+    public boolean isFull() {
+        return blockCount == VOLUME;
+    }
+    
+    /**
+     * @return approximate heap use of this section in bytes
+     */
+    public long getMemoryUsage() {
+        return 64L + palette.length * 8L + paletteSize * 16L + (data != null ? data.length * 8L : 0);
+    }
+    
+    /**
+     * @return a copy that can be changed freely, even of a shared section
+     */
+    public SchematicSection copy() {
+        SchematicSection copy = new SchematicSection();
+        copy.palette = palette.clone();
+        copy.paletteSize = paletteSize;
+        copy.paletteIds.putAll(paletteIds);
+        copy.bits = bits;
+        copy.uniformId = uniformId;
+        copy.valuesPerLong = valuesPerLong;
+        copy.mask = mask;
+        copy.data = data != null ? data.clone() : null;
+        copy.blockCount = blockCount;
+        return copy;
+    }
+    
+    /**
+     * @return true once the section is pooled and shared between schematics
+     */
+    public boolean isShared() {
+        return shared;
+    }
+    
+    void markShared(int hash) {
+        shared = true;
+        contentHash = hash;
+        contentHashed = true;
+    }
+    
+    /**
+     * @return a hash of the state at every position, the same for sections with the same content
+     */
+    int contentHash() {
+        // Only a shared section can no longer change, so only its hash is kept
+        if (contentHashed) {
+            return contentHash;
+        }
+        int hash = 1;
+        for (int i = 0; i < VOLUME; i++) {
+            hash = 31 * hash + System.identityHashCode(get(i));
+        }
+        return hash;
+    }
+    
+    /**
+     * @return true if both sections hold the same state at every position
+     */
+    boolean contentEquals(SchematicSection other) {
+        if (blockCount != other.blockCount) {
+            return false;
+        }
+        for (int i = 0; i < VOLUME; i++) {
+            if (get(i) != other.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns this section's states as a chunk section container, for pasting it wholesale where it
+     * lines up with a chunk section. Only full sections have one, since unset positions must leave
+     * the world untouched. Shared sections keep the container, so each repeat of the same content
+     * only costs a copy of it.
+     * @return a container to copy rather than modify, or null if the section isn't full
+     */
+    PalettedContainer<BlockState> getChunkStates() {
+        if (!isFull()) {
+            return null;
+        }
+        if (chunkStates != null) {
+            return chunkStates;
+        }
+        
+        PalettedContainer<BlockState> states = new PalettedContainer<>(
+            Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+        for (int i = 0; i < VOLUME; i++) {
+            states.getAndSetUnchecked(i & 15, i >> 8, (i >> 4) & 15, get(i));
+        }
+        if (shared) {
+            chunkStates = states;
+        }
+        return states;
+    }
+    
+    private void checkNotShared() {
+        if (shared) {
+            throw new IllegalStateException("Pooled schematic sections are shared and can't be changed; copy them first");
+        }
+    }
+    
+    private int idFor(BlockState state) {
+        if (state == null) {
+            return 0;
+        }
+        int id = paletteIds.getOrDefault(state, -1);
+        if (id >= 0) {
+            return id;
+        }
+        
+        id = paletteSize++;
+        if (id >= palette.length) {
+            palette = Arrays.copyOf(palette, palette.length * 2);
+        }
+        palette[id] = state;
+        paletteIds.put(state, id);
+        
+        // Widen the packed array once the palette no longer fits in the current bit width
+        if (id >= (1 << bits)) {
+            resize(Math.max(4, 32 - Integer.numberOfLeadingZeros(id)));
+        }
+        return id;
+    }
+    
+    private void resize(int newBits) {
+        int oldBits = bits;
+        long[] oldData = data;
+        int oldValuesPerLong = valuesPerLong;
+        long oldMask = mask;
+        
+        bits = newBits;
+        valuesPerLong = 64 / newBits;
+        mask = (1L << newBits) - 1;
+        data = new long[(VOLUME + valuesPerLong - 1) / valuesPerLong];
+        
+        if (oldBits == 0) {
+            // Entry 0 packs as zeros; any other uniform value has to be written out
+            if (uniformId != 0) {
+                for (int i = 0; i < VOLUME; i++) {
+                    setId(i, uniformId);
+                }
+                uniformId = 0;
+            }
+            return;
+        }
+        for (int i = 0; i < VOLUME; i++) {
+            int id = (int) ((oldData[i / oldValuesPerLong] >>> ((i % oldValuesPerLong) * oldBits)) & oldMask);
+            if (id != 0) {
+                setId(i, id);
+            }
+        }
+    }
+    
+    /**
+     * Writes the section in the compiled cache layout, with its palette mapped to
+     * schematic-wide ids. See {@link CompiledSchematicCache}.
+     */
+    void write(DataOutput out, Reference2IntMap<BlockState> globalIds) throws IOException {
+        out.writeInt(blockCount);
+        out.writeByte(bits);
+        out.writeShort(paletteSize);
+        for (int i = 1; i < paletteSize; i++) {
+            out.writeInt(globalIds.getInt(palette[i]));
+        }
+        if (bits == 0) {
+            out.writeShort(uniformId);
+        } else {
+            out.writeInt(data.length);
+            for (long value : data) {
+                out.writeLong(value);
+            }
+        }
+    }
+    
+    /**
+     * Reads a section written by {@link #write}, resolving palette ids through the schematic palette.
+     */
+    static SchematicSection read(ByteBuffer buffer, BlockState[] globalPalette) throws IOException {
+        SchematicSection section = new SchematicSection();
+        section.blockCount = buffer.getInt();
+        int bits = buffer.get();
+        int paletteSize = buffer.getShort() & 0xFFFF;
+        if (bits < 0 || bits > 16 || paletteSize < 1 || section.blockCount < 0 || section.blockCount > VOLUME) {
+            throw new IOException("Corrupt compiled section");
+        }
+        
+        section.palette = new BlockState[paletteSize];
+        section.paletteSize = paletteSize;
+        for (int i = 1; i < paletteSize; i++) {
+            int globalId = buffer.getInt();
+            if (globalId < 0 || globalId >= globalPalette.length) {
+                throw new IOException("Palette id " + globalId + " out of range");
+            }
+            section.palette[i] = globalPalette[globalId];
+            section.paletteIds.put(globalPalette[globalId], i);
+        }
+        
+        if (bits == 0) {
+            section.uniformId = buffer.getShort() & 0xFFFF;
+            if (section.uniformId >= paletteSize) {
+                throw new IOException("Corrupt compiled section");
+            }
+        } else {
+            section.bits = bits;
+            section.valuesPerLong = 64 / bits;
+            section.mask = (1L << bits) - 1;
+            int length = buffer.getInt();
+            if (length != (VOLUME + section.valuesPerLong - 1) / section.valuesPerLong) {
+                throw new IOException("Corrupt compiled section");
+            }
+            section.data = new long[length];
+            buffer.asLongBuffer().get(section.data);
+            buffer.position(buffer.position() + length * Long.BYTES);
+        }
+        return section;
+    }
+    
+    private int getId(int index) {
+        int shift = (index % valuesPerLong) * bits;
+        return (int) ((data[index / valuesPerLong] >>> shift) & mask);
+    }
+    
+    private void setId(int index, int id) {
+        int cell = index / valuesPerLong;
+        int shift = (index % valuesPerLong) * bits;
+        data[cell] = (data[cell] & ~(mask << shift)) | ((long) id << shift);
+    }
+}
@@ -0,0 +1,62 @@
+package com.theescapemod.functions.schematic;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content-addressed store of schematic sections shared by every loaded schematic.
+ * Escape room builds repeat the same walls, floors and fills many times, so sections are
+ * looked up by a hash of their content and each distinct section is kept once. Pooled
+ * sections are only weakly held here; they go away with the last schematic using them.
+ */
+public class SectionPool {
+    private static final Int2ObjectMap<List<PooledSection>> sections = new Int2ObjectOpenHashMap<>();
+    private static final ReferenceQueue<SchematicSection> collected = new ReferenceQueue<>();
+    
+    /**
+     * @return the pooled section with the same content, pooling this one if there is none yet
+     */
+    public static synchronized SchematicSection intern(SchematicSection section) {
+        if (section.isShared()) {
+            return section;
+        }
+        expungeCollected();
+        
+        int hash = section.contentHash();
+        List<PooledSection> bucket = sections.computeIfAbsent(hash, key -> new ArrayList<>(1));
+        for (PooledSection pooled : bucket) {
+            SchematicSection existing = pooled.get();
+            if (existing != null && existing.contentEquals(section)) {
+                return existing;
+            }
+        }
+        
+        section.markShared(hash);
+        bucket.add(new PooledSection(section, hash, collected));
+        return section;
+    }
+    
+    private static void expungeCollected() {
+        PooledSection pooled;
+        while ((pooled = (PooledSection) collected.poll()) != null) {
+            List<PooledSection> bucket = sections.get(pooled.hash);
+            if (bucket != null && bucket.remove(pooled) && bucket.isEmpty()) {
+                sections.remove(pooled.hash);
+            }
+        }
+    }
+    
+    private static class PooledSection extends WeakReference<SchematicSection> {
+        final int hash;
+        
+        PooledSection(SchematicSection section, int hash, ReferenceQueue<SchematicSection> queue) {
+            super(section, queue);
+            this.hash = hash;
+        }
+    }
+}
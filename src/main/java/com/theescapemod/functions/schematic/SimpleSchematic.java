@@ -1,15 +1,16 @@
 package com.theescapemod.functions.schematic;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.resources.ResourceLocation;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -19,6 +20,8 @@ import org.slf4j.Logger;
 /**
  * Simple schematic data structure that holds loaded schematic information.
  * This is a simplified version that doesn't require WorldEdit dependencies.
+ * Blocks are kept in 16x16x16 {@link SchematicSection}s with packed palettes, so
+ * memory use scales with the number of distinct states per section rather than per block.
  */
 public class SimpleSchematic {
     private static final Logger LOGGER = LogUtils.getLogger();
@@ -28,7 +31,10 @@ public class SimpleSchematic {
     public final int length;
     public final BlockPos offset;
     
-    private final Map<BlockPos, BlockState> blocks = new HashMap<>();
+    private final int sectionsX;
+    private final int sectionsY;
+    private final int sectionsZ;
+    private final SchematicSection[] sections;
     private final List<CompoundTag> blockEntities = new ArrayList<>();
     
     public SimpleSchematic(int width, int height, int length, BlockPos offset) {
@@ -36,21 +42,375 @@ public class SimpleSchematic {
         this.height = height;
         this.length = length;
         this.offset = offset;
+        this.sectionsX = (width + 15) >> 4;
+        this.sectionsY = (height + 15) >> 4;
+        this.sectionsZ = (length + 15) >> 4;
+        this.sections = new SchematicSection[sectionsX * sectionsY * sectionsZ];
     }
     
     public void setBlock(BlockPos pos, BlockState state) {
-        blocks.put(pos, state);
+        setBlock(pos.getX(), pos.getY(), pos.getZ(), state);
+    }
+    
+    /**
+     * Sets a block relative to the schematic origin; null clears it.
+     * Positions outside the schematic's size are ignored.
+     */
+    public void setBlock(int x, int y, int z, BlockState state) {
+        if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= length) {
+            return;
+        }
+        
+        int sectionIndex = sectionIndex(x >> 4, y >> 4, z >> 4);
+        SchematicSection section = sections[sectionIndex];
+        if (section == null) {
+            if (state == null) {
+                return;
+            }
+            section = new SchematicSection();
+            sections[sectionIndex] = section;
+        } else if (section.isShared()) {
+            // Pooled sections may be used by other schematics too
+            section = section.copy();
+            sections[sectionIndex] = section;
+        }
+        section.set(x & 15, y & 15, z & 15, state);
     }
     
     public BlockState getBlock(BlockPos pos) {
-        return blocks.get(pos);
+        return getBlock(pos.getX(), pos.getY(), pos.getZ());
+    }
+    
+    /**
+     * @return the block at a position, or null if the schematic doesn't set one there
+     */
+    public BlockState getBlock(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= length) {
+            return null;
+        }
+        SchematicSection section = sections[sectionIndex(x >> 4, y >> 4, z >> 4)];
+        return section != null ? section.get(x & 15, y & 15, z & 15) : null;
     }
     
     public void addBlockEntity(CompoundTag blockEntity) {
         blockEntities.add(blockEntity);
     }
     
+    public int getSectionsX() {
+        return sectionsX;
+    }
+    
+    public int getSectionsY() {
+        return sectionsY;
+    }
+    
+    public int getSectionsZ() {
+        return sectionsZ;
+    }
+    
+    /**
+     * @return the section at the given section coordinates, or null if it holds no blocks
+     */
+    public SchematicSection getSection(int sectionX, int sectionY, int sectionZ) {
+        return sections[sectionIndex(sectionX, sectionY, sectionZ)];
+    }
+    
+    /**
+     * Replaces a whole section; used when loading compiled schematics.
+     */
+    void setSection(int sectionX, int sectionY, int sectionZ, SchematicSection section) {
+        sections[sectionIndex(sectionX, sectionY, sectionZ)] = section;
+    }
+    
+    private int sectionIndex(int sectionX, int sectionY, int sectionZ) {
+        return (sectionY * sectionsZ + sectionZ) * sectionsX + sectionX;
+    }
+    
+    /**
+     * @return number of positions holding a block
+     */
+    public long getBlockCount() {
+        long count = 0;
+        for (SchematicSection section : sections) {
+            if (section != null) {
+                count += section.getBlockCount();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * @return approximate heap use of the block data in bytes
+     */
+    public long getMemoryUsage() {
+        long usage = sections.length * 8L;
+        for (SchematicSection section : sections) {
+            if (section != null) {
+                usage += section.getMemoryUsage();
+            }
+        }
+        return usage;
+    }
+    
+    /**
+     * Shrinks every section's palette to what it actually uses and drops empty sections.
+     * Readers call this once all blocks are in.
+     */
+    public void compact() {
+        for (int i = 0; i < sections.length; i++) {
+            SchematicSection section = sections[i];
+            if (section == null) {
+                continue;
+            }
+            if (section.isEmpty()) {
+                sections[i] = null;
+            } else {
+                section.compact();
+            }
+        }
+    }
+    
+    /**
+     * Turns air and structure voids into unset positions, so pasting leaves whatever
+     * is in the world there untouched. Sections left empty are dropped entirely.
+     * @return number of positions removed
+     */
+    public long stripAir() {
+        long removed = 0;
+        for (int i = 0; i < sections.length; i++) {
+            SchematicSection section = sections[i];
+            if (section == null) {
+                continue;
+            }
+            if (section.isShared()) {
+                SchematicSection copy = section.copy();
+                int sectionRemoved = copy.removeIf(SimpleSchematic::isSkippedInSparseMode);
+                if (sectionRemoved == 0) {
+                    continue;
+                }
+                removed += sectionRemoved;
+                section = copy;
+                sections[i] = section;
+            } else {
+                removed += section.removeIf(SimpleSchematic::isSkippedInSparseMode);
+            }
+            if (section.isEmpty()) {
+                sections[i] = null;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * Swaps every section for the {@link SectionPool} copy with the same content, so builds
+     * repeating the same walls and fills only hold each distinct section once.
+     * Sections are read-only afterwards; writing to one replaces it with a private copy.
+     * @return number of sections that were already pooled
+     */
+    public int internSections() {
+        int reused = 0;
+        for (int i = 0; i < sections.length; i++) {
+            SchematicSection section = sections[i];
+            if (section == null || section.isShared()) {
+                continue;
+            }
+            SchematicSection pooled = SectionPool.intern(section);
+            if (pooled != section) {
+                sections[i] = pooled;
+                reused++;
+            }
+        }
+        return reused;
+    }
+    
+    /**
+     * Builds the edit that turns a pasted {@code previous} version of a schematic into {@code current}:
+     * only the positions whose block changed are set. Blocks of the previous version that the current
+     * one no longer sets become air. The current version's block entities are carried over.
+     */
+    public static SimpleSchematic difference(SimpleSchematic previous, SimpleSchematic current) {
+        SimpleSchematic delta = new SimpleSchematic(
+            Math.max(previous.width, current.width),
+            Math.max(previous.height, current.height),
+            Math.max(previous.length, current.length),
+            current.offset);
+        BlockState air = Blocks.AIR.defaultBlockState();
+        
+        for (int sectionY = 0; sectionY < delta.sectionsY; sectionY++) {
+            for (int sectionZ = 0; sectionZ < delta.sectionsZ; sectionZ++) {
+                for (int sectionX = 0; sectionX < delta.sectionsX; sectionX++) {
+                    SchematicSection before = previous.getSectionOrNull(sectionX, sectionY, sectionZ);
+                    SchematicSection after = current.getSectionOrNull(sectionX, sectionY, sectionZ);
+                    if (before == after) {
+                        continue;
+                    }
+                    
+                    SchematicSection changed = new SchematicSection();
+                    for (int index = 0; index < SchematicSection.VOLUME; index++) {
+                        BlockState oldState = before != null ? before.get(index) : null;
+                        BlockState newState = after != null ? after.get(index) : null;
+                        if (newState != null) {
+                            if (newState != oldState) {
+                                changed.set(index, newState);
+                            }
+                        } else if (oldState != null && !oldState.isAir()) {
+                            changed.set(index, air);
+                        }
+                    }
+                    
+                    if (!changed.isEmpty()) {
+                        changed.compact();
+                        delta.setSection(sectionX, sectionY, sectionZ, changed);
+                    }
+                }
+            }
+        }
+        
+        delta.blockEntities.addAll(current.blockEntities);
+        return delta;
+    }
+    
+    /**
+     * Copies the part of this schematic that lands inside the given chunks when pasted at {@code targetPos}.
+     * Sections that lie entirely inside are shared rather than copied.
+     */
+    public SimpleSchematic retainChunks(BlockPos targetPos, LongSet chunks) {
+        SimpleSchematic retained = new SimpleSchematic(width, height, length, offset);
+        
+        for (int sectionZ = 0; sectionZ < sectionsZ; sectionZ++) {
+            for (int sectionX = 0; sectionX < sectionsX; sectionX++) {
+                int baseX = targetPos.getX() + (sectionX << 4);
+                int baseZ = targetPos.getZ() + (sectionZ << 4);
+                
+                // A section not aligned to chunks spans up to four of them
+                boolean anyInside = false;
+                boolean allInside = true;
+                for (int chunkX = baseX >> 4; chunkX <= (baseX + 15) >> 4; chunkX++) {
+                    for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + 15) >> 4; chunkZ++) {
+                        if (chunks.contains(ChunkPos.asLong(chunkX, chunkZ))) {
+                            anyInside = true;
+                        } else {
+                            allInside = false;
+                        }
+                    }
+                }
+                if (!anyInside) {
+                    continue;
+                }
+                
+                for (int sectionY = 0; sectionY < sectionsY; sectionY++) {
+                    SchematicSection section = getSection(sectionX, sectionY, sectionZ);
+                    if (section == null) {
+                        continue;
+                    }
+                    if (allInside) {
+                        retained.setSection(sectionX, sectionY, sectionZ, section);
+                        continue;
+                    }
+                    
+                    SchematicSection part = new SchematicSection();
+                    for (int index = 0; index < SchematicSection.VOLUME; index++) {
+                        BlockState state = section.get(index);
+                        if (state != null && chunks.contains(ChunkPos.asLong(
+                                (baseX + (index & 15)) >> 4, (baseZ + ((index >> 4) & 15)) >> 4))) {
+                            part.set(index, state);
+                        }
+                    }
+                    if (!part.isEmpty()) {
+                        part.compact();
+                        retained.setSection(sectionX, sectionY, sectionZ, part);
+                    }
+                }
+            }
+        }
+        
+        for (CompoundTag blockEntity : blockEntities) {
+            BlockPos pos = SchematicPaster.getBlockEntityPos(blockEntity);
+            if (pos != null && chunks.contains(ChunkPos.asLong(
+                    (targetPos.getX() + pos.getX()) >> 4, (targetPos.getZ() + pos.getZ()) >> 4))) {
+                retained.blockEntities.add(blockEntity);
+            }
+        }
+        return retained;
+    }
+    
+    /**
+     * @return the chunks under sections that hold blocks when pasted at {@code targetPos},
+     *         along X and then Z like {@link com.theescapemod.functions.world.ChunkPreloader#getFootprint}
+     */
+    public LongArrayList getChunkFootprint(BlockPos targetPos) {
+        LongSet footprint = new LongLinkedOpenHashSet();
+        for (int sectionX = 0; sectionX < sectionsX; sectionX++) {
+            for (int sectionZ = 0; sectionZ < sectionsZ; sectionZ++) {
+                boolean occupied = false;
+                for (int sectionY = 0; sectionY < sectionsY && !occupied; sectionY++) {
+                    occupied = getSection(sectionX, sectionY, sectionZ) != null;
+                }
+                if (!occupied) {
+                    continue;
+                }
+                
+                int baseX = targetPos.getX() + (sectionX << 4);
+                int baseZ = targetPos.getZ() + (sectionZ << 4);
+                for (int chunkX = baseX >> 4; chunkX <= (baseX + 15) >> 4; chunkX++) {
+                    for (int chunkZ = baseZ >> 4; chunkZ <= (baseZ + 15) >> 4; chunkZ++) {
+                        footprint.add(ChunkPos.asLong(chunkX, chunkZ));
+                    }
+                }
+            }
+        }
+        return new LongArrayList(footprint);
+    }
+    
+    private SchematicSection getSectionOrNull(int sectionX, int sectionY, int sectionZ) {
+        if (sectionX >= sectionsX || sectionY >= sectionsY || sectionZ >= sectionsZ) {
+            return null;
+        }
+        return sections[sectionIndex(sectionX, sectionY, sectionZ)];
+    }
+    
+    /**
+     * @return true for states that sparse imports treat as "leave untouched"
+     */
+    public static boolean isSkippedInSparseMode(BlockState state) {
+        return state.isAir() || state.is(Blocks.STRUCTURE_VOID);
+    }
+    
+    /**
+     * Visits every set block in section order (section by section, then y, z, x within
+     * each), which keeps consecutive writes inside the same chunk section.
+     */
+    public void forEachBlock(BlockVisitor visitor) {
+        for (int sectionY = 0; sectionY < sectionsY; sectionY++) {
+            for (int sectionZ = 0; sectionZ < sectionsZ; sectionZ++) {
+                for (int sectionX = 0; sectionX < sectionsX; sectionX++) {
+                    SchematicSection section = getSection(sectionX, sectionY, sectionZ);
+                    if (section == null || section.isEmpty()) {
+                        continue;
+                    }
+                    
+                    int baseX = sectionX << 4;
+                    int baseY = sectionY << 4;
+                    int baseZ = sectionZ << 4;
+                    for (int index = 0; index < SchematicSection.VOLUME; index++) {
+                        BlockState state = section.get(index);
+                        if (state != null) {
+                            visitor.accept(baseX + (index & 15), baseY + (index >> 8), baseZ + ((index >> 4) & 15), state);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Builds a map of every set block. This allocates one entry per block and is only
+     * kept for compatibility; use {@link #forEachBlock} instead.
+     */
+    @Deprecated
     public Map<BlockPos, BlockState> getAllBlocks() {
+        Map<BlockPos, BlockState> blocks = new LinkedHashMap<>();
+        forEachBlock((x, y, z, state) -> blocks.put(new BlockPos(x, y, z), state));
         return blocks;
     }
     
@@ -58,61 +418,25 @@ public class SimpleSchematic {
         return blockEntities;
     }
     
+    @FunctionalInterface
+    public interface BlockVisitor {
+        void accept(int x, int y, int z, BlockState state);
+    }
+    
     /**
-     * Converts a block state string (like "minecraft:stone[variant=granite]") to a BlockState.
-     * This is a simplified version that handles basic block states.
+     * Converts a block state string (like "minecraft:oak_stairs[facing=east]") to a BlockState,
+     * applying its properties. Results are cached process-wide by {@link BlockStateCache}.
      */
     public static BlockState parseBlockState(String blockStateString) {
-        try {
-            // Handle simple case: "minecraft:stone"
-            if (!blockStateString.contains("[")) {
-                ResourceLocation blockId = ResourceLocation.parse(blockStateString);
-                Block block = BuiltInRegistries.BLOCK.get(blockId);
-                return block != null ? block.defaultBlockState() : Blocks.AIR.defaultBlockState();
-            }
-            
-            // Handle properties: "minecraft:stone[variant=granite]"
-            int bracketIndex = blockStateString.indexOf("[");
-            String blockId = blockStateString.substring(0, bracketIndex);
-            // For now, we'll just use the default state and ignore properties
-            // A full implementation would parse the properties and apply them
-            
-            ResourceLocation blockResourceLocation = ResourceLocation.parse(blockId);
-            Block block = BuiltInRegistries.BLOCK.get(blockResourceLocation);
-            
-            if (block != null) {
-                // TODO: Parse and apply block properties from the bracket section
-                return block.defaultBlockState();
-            }
-            
-            return Blocks.AIR.defaultBlockState();
-        } catch (Exception e) {
-            LOGGER.warn("Failed to parse block state '{}': {}", blockStateString, e.getMessage());
-            return Blocks.AIR.defaultBlockState();
-        }
+        return BlockStateCache.get(blockStateString);
     }
     
     /**
      * Converts legacy block ID + data to modern BlockState.
-     * This is used for MCEdit format schematics.
+     * This is used for MCEdit format schematics; unknown IDs fall back to stone.
      */
     public static BlockState legacyToBlockState(int blockId, int data) {
-        // This is a very simplified conversion
-        // A full implementation would use proper legacy mapping tables
-        try {
-            if (blockId == 0) return Blocks.AIR.defaultBlockState();
-            if (blockId == 1) return Blocks.STONE.defaultBlockState();
-            if (blockId == 2) return Blocks.GRASS_BLOCK.defaultBlockState();
-            if (blockId == 3) return Blocks.DIRT.defaultBlockState();
-            if (blockId == 4) return Blocks.COBBLESTONE.defaultBlockState();
-            if (blockId == 5) return Blocks.OAK_PLANKS.defaultBlockState();
-            // Add more mappings as needed...
-            
-            LOGGER.warn("Unknown legacy block ID: {} with data: {}", blockId, data);
-            return Blocks.STONE.defaultBlockState(); // Fallback
-        } catch (Exception e) {
-            LOGGER.warn("Failed to convert legacy block {}/{}: {}", blockId, data, e.getMessage());
-            return Blocks.AIR.defaultBlockState();
-        }
+        BlockState state = LegacyBlockTable.get(blockId, data);
+        return state != null ? state : Blocks.STONE.defaultBlockState();
     }
 }
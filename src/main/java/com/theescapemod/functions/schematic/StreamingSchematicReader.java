@@ -0,0 +1,352 @@
+package com.theescapemod.functions.schematic;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NumericTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+import net.minecraft.world.level.block.state.BlockState;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads Sponge schematics (v1-v3) as a stream of NBT tags instead of a {@link CompoundTag} tree.
+ * <p>
+ * A first pass reads the header, palette and block entities and skips over the block data.
+ * A second pass seeks straight to the block data and decodes it 16 layers at a time,
+ * handing each finished {@link SchematicSection} to a consumer. Peak memory is one slab
+ * of sections plus a small read buffer, however large the schematic is.
+ */
+public class StreamingSchematicReader {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Root tags only MCEdit, Litematica and structure template files have
+    private static final Set<String> OTHER_FORMAT_TAGS = Set.of(
+        "Materials", "AddBlocks", "Regions", "size", "blocks", "palette", "palettes", "entities");
+    
+    /**
+     * Receives sections as they are decoded, in slab order (bottom to top).
+     */
+    @FunctionalInterface
+    public interface SectionConsumer {
+        void accept(int sectionX, int sectionY, int sectionZ, SchematicSection section);
+    }
+    
+    /**
+     * Everything in a schematic except its block data.
+     */
+    public static class Header {
+        public int version = -1;
+        public int width;
+        public int height;
+        public int length;
+        public BlockPos offset = BlockPos.ZERO;
+        public BlockState[] palette;
+        public final List<CompoundTag> blockEntities = new ArrayList<>();
+        // Compound names leading to the block data array, e.g. [Schematic, Blocks, Data]
+        List<String> dataPath;
+        // Set when a root tag showed the file is another format, which ends the scan there
+        boolean otherFormat;
+        
+        public boolean isSponge() {
+            return !otherFormat && version > 0 && palette != null && dataPath != null && width > 0 && height > 0 && length > 0;
+        }
+        
+        public long getVolume() {
+            return (long) width * height * length;
+        }
+    }
+    
+    /**
+     * Reads the header of a schematic, or returns null if the file isn't readable as NBT.
+     */
+    public static Header tryReadHeader(File file) {
+        try {
+            return readHeader(file);
+        } catch (IOException e) {
+            LOGGER.debug("Could not stream-read header of {}: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * First pass: reads dimensions, offset, palette and block entities, skipping the block data.
+     * Stops at the first root tag that belongs to another format, so other files aren't read through.
+     */
+    public static Header readHeader(File file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            readRootTag(in);
+            Header header = new Header();
+            scanCompound(in, header, new ArrayList<>());
+            return header;
+        }
+    }
+    
+    /**
+     * Reads a whole schematic into memory section by section, without an intermediate NBT tree.
+     */
+    public static SimpleSchematic read(File file, Header header) throws IOException {
+        SimpleSchematic schematic = new SimpleSchematic(header.width, header.height, header.length, header.offset);
+        for (CompoundTag blockEntity : header.blockEntities) {
+            schematic.addBlockEntity(blockEntity);
+        }
+        streamSections(file, header, schematic::setSection);
+        LOGGER.info("Loaded {} blocks from schematic", schematic.getBlockCount());
+        return schematic;
+    }
+    
+    /**
+     * Second pass: decodes the block data and hands each non-empty section to the consumer.
+     */
+    public static void streamSections(File file, Header header, SectionConsumer consumer) throws IOException {
+        if (!header.isSponge()) {
+            throw new IOException("Not a Sponge schematic");
+        }
+        
+        try (DataInputStream in = open(file)) {
+            readRootTag(in);
+            int byteLength = seekByteArray(in, header.dataPath, 0);
+            VarIntStream varInts = new VarIntStream(in, byteLength);
+            
+            int sectionsX = (header.width + 15) >> 4;
+            int sectionsY = (header.height + 15) >> 4;
+            int sectionsZ = (header.length + 15) >> 4;
+            SchematicSection[] slab = new SchematicSection[sectionsX * sectionsZ];
+            BlockState[] palette = header.palette;
+            long unknownIds = 0;
+            
+            for (int sectionY = 0; sectionY < sectionsY; sectionY++) {
+                Arrays.fill(slab, null);
+                int maxY = Math.min(header.height, (sectionY + 1) << 4);
+                
+                for (int y = sectionY << 4; y < maxY; y++) {
+                    for (int z = 0; z < header.length; z++) {
+                        for (int x = 0; x < header.width; x++) {
+                            int id = varInts.next();
+                            if (id < 0) {
+                                LOGGER.warn("Block data of {} ended early at layer {}", file.getName(), y);
+                                emitSlab(slab, sectionsX, sectionY, consumer);
+                                warnUnknownIds(file, unknownIds);
+                                return;
+                            }
+                            if (id >= palette.length || palette[id] == null) {
+                                unknownIds++;
+                                continue;
+                            }
+                            
+                            int slabIndex = (z >> 4) * sectionsX + (x >> 4);
+                            SchematicSection section = slab[slabIndex];
+                            if (section == null) {
+                                section = new SchematicSection();
+                                slab[slabIndex] = section;
+                            }
+                            section.set(x & 15, y & 15, z & 15, palette[id]);
+                        }
+                    }
+                }
+                emitSlab(slab, sectionsX, sectionY, consumer);
+            }
+            warnUnknownIds(file, unknownIds);
+        }
+    }
+    
+    /**
+     * Positions whose palette id has no usable state are left unset, as the decoded reader does.
+     */
+    private static void warnUnknownIds(File file, long unknownIds) {
+        if (unknownIds > 0) {
+            LOGGER.warn("{} positions in {} use palette ids with no known block state and were left unset",
+                unknownIds, file.getName());
+        }
+    }
+    
+    private static void emitSlab(SchematicSection[] slab, int sectionsX, int sectionY, SectionConsumer consumer) {
+        for (int i = 0; i < slab.length; i++) {
+            SchematicSection section = slab[i];
+            if (section != null && !section.isEmpty()) {
+                section.compact();
+                consumer.accept(i % sectionsX, sectionY, i / sectionsX, section);
+            }
+        }
+    }
+    
+    private static DataInputStream open(File file) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        
+        // Schematics are normally gzipped, but plain NBT is accepted too
+        InputStream stream = first == 0x1F && second == 0x8B
+            ? new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE)
+            : buffered;
+        return new DataInputStream(stream);
+    }
+    
+    private static void readRootTag(DataInputStream in) throws IOException {
+        if (in.readByte() != Tag.TAG_COMPOUND) {
+            throw new IOException("Root tag is not a compound");
+        }
+        in.readUTF();
+    }
+    
+    /**
+     * Walks one compound's entries, descending into "Schematic" and "Blocks" compounds.
+     */
+    private static void scanCompound(DataInputStream in, Header header, List<String> path) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        byte type;
+        while ((type = in.readByte()) != Tag.TAG_END) {
+            String name = in.readUTF();
+            
+            if (path.isEmpty() && (OTHER_FORMAT_TAGS.contains(name) || (name.equals("Blocks") && type == Tag.TAG_BYTE_ARRAY))) {
+                header.otherFormat = true;
+                return;
+            }
+            
+            if (type == Tag.TAG_COMPOUND && path.size() < 2 && (name.equals("Schematic") || name.equals("Blocks"))) {
+                path.add(name);
+                scanCompound(in, header, path);
+                path.remove(path.size() - 1);
+                continue;
+            }
+            
+            switch (name) {
+                case "Version", "Width", "Height", "Length" -> {
+                    Tag tag = TagTypes.getType(type).load(in, accounter);
+                    if (tag instanceof NumericTag numeric) {
+                        switch (name) {
+                            case "Version" -> header.version = numeric.getAsInt();
+                            case "Width" -> header.width = numeric.getAsShort() & 0xFFFF;
+                            case "Height" -> header.height = numeric.getAsShort() & 0xFFFF;
+                            default -> header.length = numeric.getAsShort() & 0xFFFF;
+                        }
+                    }
+                }
+                case "Offset" -> {
+                    Tag tag = TagTypes.getType(type).load(in, accounter);
+                    if (tag instanceof IntArrayTag offsetTag && offsetTag.getAsIntArray().length >= 3) {
+                        int[] offset = offsetTag.getAsIntArray();
+                        header.offset = new BlockPos(offset[0], offset[1], offset[2]);
+                    }
+                }
+                case "Palette" -> {
+                    Tag tag = TagTypes.getType(type).load(in, accounter);
+                    if (tag instanceof CompoundTag paletteTag) {
+                        header.palette = SchematicReader.readSpongePalette(paletteTag);
+                    }
+                }
+                case "BlockData", "Data" -> {
+                    if (type != Tag.TAG_BYTE_ARRAY) {
+                        TagTypes.getType(type).skip(in, accounter);
+                        break;
+                    }
+                    // "Data" wins over "BlockData" if a file has both
+                    if (name.equals("Data") || header.dataPath == null) {
+                        header.dataPath = new ArrayList<>(path);
+                        header.dataPath.add(name);
+                    }
+                    in.skipNBytes(in.readInt());
+                }
+                case "BlockEntities", "TileEntities" -> {
+                    Tag tag = TagTypes.getType(type).load(in, accounter);
+                    if (tag instanceof ListTag list) {
+                        for (int i = 0; i < list.size(); i++) {
+                            header.blockEntities.add(list.getCompound(i));
+                        }
+                    }
+                }
+                default -> TagTypes.getType(type).skip(in, accounter);
+            }
+        }
+    }
+    
+    /**
+     * Skips ahead to the byte array at the given compound path.
+     * @return the array's length in bytes; the stream is left at its first byte
+     */
+    private static int seekByteArray(DataInputStream in, List<String> path, int depth) throws IOException {
+        NbtAccounter accounter = NbtAccounter.unlimitedHeap();
+        String target = path.get(depth);
+        boolean last = depth == path.size() - 1;
+        byte type;
+        while ((type = in.readByte()) != Tag.TAG_END) {
+            String name = in.readUTF();
+            if (name.equals(target)) {
+                if (last && type == Tag.TAG_BYTE_ARRAY) {
+                    return in.readInt();
+                }
+                if (!last && type == Tag.TAG_COMPOUND) {
+                    return seekByteArray(in, path, depth + 1);
+                }
+            }
+            TagTypes.getType(type).skip(in, accounter);
+        }
+        throw new IOException("Block data not found at " + path);
+    }
+    
+    /**
+     * Decodes VarInts from a bounded region of a stream through a reusable buffer.
+     */
+    private static class VarIntStream {
+        final InputStream in;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int remaining;
+        int position;
+        int limit;
+        
+        VarIntStream(InputStream in, int length) {
+            this.in = in;
+            this.remaining = length;
+        }
+        
+        /**
+         * @return the next value, or -1 once the data is exhausted
+         */
+        int next() throws IOException {
+            int value = 0;
+            int shift = 0;
+            while (true) {
+                if (position == limit) {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    limit = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (limit <= 0) {
+                        throw new EOFException("Unexpected end of block data");
+                    }
+                    remaining -= limit;
+                    position = 0;
+                }
+                
+                byte b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift >= 35) {
+                    throw new IOException("VarInt too long in block data");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.theescapemod.functions.schematic;
+
+/**
+ * Decodes the VarInt-packed palette indices used by Sponge schematic {@code BlockData}.
+ */
+public final class VarIntDecoder {
+    private VarIntDecoder() {
+    }
+    
+    /**
+     * Decodes up to {@code out.length} VarInts from {@code data} into {@code out}.
+     * A truncated or malformed trailing value stops decoding.
+     * @return the number of values decoded
+     */
+    public static int decode(byte[] data, int[] out) {
+        return new Cursor(data).next(out, out.length);
+    }
+    
+    /**
+     * Reads values from a byte array a slice at a time, so a large volume can be decoded
+     * through one small reused buffer instead of a single array of every index.
+     */
+    public static final class Cursor {
+        private final byte[] data;
+        private int position;
+        
+        public Cursor(byte[] data) {
+            this.data = data;
+        }
+        
+        /**
+         * Decodes up to {@code count} VarInts into the start of {@code out}. Allocates nothing.
+         * @return the number of values decoded, fewer than {@code count} once the data runs out
+         *         or a value is malformed
+         */
+        public int next(int[] out, int count) {
+            byte[] data = this.data;
+            int dataIndex = position;
+            int dataLength = data.length;
+            int decoded = 0;
+            
+            while (decoded < count && dataIndex < dataLength) {
+                byte b = data[dataIndex++];
+                // Most palettes fit in one byte, so handle that case without looping
+                if (b >= 0) {
+                    out[decoded++] = b;
+                    continue;
+                }
+                
+                int value = b & 0x7F;
+                int shift = 7;
+                boolean complete = false;
+                while (dataIndex < dataLength && shift < 35) {
+                    b = data[dataIndex++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                    if (b >= 0) {
+                        complete = true;
+                        break;
+                    }
+                }
+                if (!complete) {
+                    // Nothing after a malformed value can be trusted
+                    dataIndex = dataLength;
+                    break;
+                }
+                out[decoded++] = value;
+            }
+            
+            position = dataIndex;
+            return decoded;
+        }
+    }
+}
@@ -3,28 +3,253 @@ package com.theescapemod.functions.world;
 import com.mojang.logging.LogUtils;
 import com.theescapemod.functions.TheEscapeModFunctions;
 import com.theescapemod.functions.dimension.DimensionConfig;
-import net.minecraft.core.BlockPos;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.level.ChunkEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import org.slf4j.Logger;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Manages invisible barrier blocks around dimension perimeters.
  * Creates a physical wall that players cannot pass through.
+ * Walls are written in bulk through {@link ChunkSectionWriter} rather than block by block,
+ * one chunk at a time using the column masks from {@link BarrierRaster}.
+ * {@link BarrierSavedData} records the wall each perimeter chunk holds, so chunks are
+ * brought up to date lazily as they load, and a refresh only touches what changed.
  */
+@EventBusSubscriber
 public class BarrierManager {
     private static final Logger LOGGER = LogUtils.getLogger();
     
-    // Height range for barriers (covers most of the world height)
-    private static final int MIN_BARRIER_Y = -64;
-    private static final int MAX_BARRIER_Y = 320;
+    // Upper bound on chunks stamped per tick, so a burst of chunk loads is spread out
+    private static final int MAX_CHUNKS_PER_TICK = 64;
+    
+    // Dimensions whose chunks are brought up to date as they load, and the chunks waiting for it
+    private static final Set<ResourceKey<Level>> lazyDimensions = new HashSet<>();
+    private static final Map<ResourceKey<Level>, LongLinkedOpenHashSet> pendingChunks = new HashMap<>();
+    
+    // Running refresh job per dimension
+    private static final Map<ResourceKey<Level>, Integer> refreshJobs = new HashMap<>();
+    
+    /**
+     * Enables lazy barrier placement for all configured dimensions.
+     * The configured wall becomes the target; perimeter chunks that are already loaded are
+     * queued immediately and the rest are stamped as they load. Dimensions using a virtual
+     * barrier get no target, so any wall left from earlier is removed the same way.
+     */
+    public static void enableLazyPlacement(MinecraftServer server, Map<String, DimensionConfig> configs) {
+        synchronized (pendingChunks) {
+            lazyDimensions.clear();
+            pendingChunks.clear();
+        }
+        
+        for (DimensionConfig config : configs.values()) {
+            ServerLevel level = server.getLevel(getDimensionKey(config));
+            if (level == null) {
+                LOGGER.warn("Could not find dimension '{}' to place barriers", config.getName());
+                continue;
+            }
+            
+            BarrierSavedData data = BarrierSavedData.get(level);
+            data.setTarget(config.isVirtualBarrier() ? null : BarrierWallSpec.fromConfig(config, level));
+            
+            synchronized (pendingChunks) {
+                lazyDimensions.add(level.dimension());
+                LongLinkedOpenHashSet pending = pendingChunks.computeIfAbsent(level.dimension(), key -> new LongLinkedOpenHashSet());
+                for (long chunkPos : getStaleChunks(data)) {
+                    if (level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)) != null) {
+                        pending.add(chunkPos);
+                    }
+                }
+            }
+            
+            LOGGER.info("Lazy barrier placement enabled for '{}' with wall {} ({} chunks stamped)",
+                config.getName(), data.getTarget(), data.getStampedCount());
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+        
+        synchronized (pendingChunks) {
+            if (!lazyDimensions.contains(level.dimension())) {
+                return;
+            }
+            
+            long chunkPos = event.getChunk().getPos().toLong();
+            if (needsReconcile(BarrierSavedData.get(level), chunkPos)) {
+                pendingChunks.get(level.dimension()).add(chunkPos);
+            }
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        synchronized (pendingChunks) {
+            if (pendingChunks.isEmpty()) {
+                return;
+            }
+            
+            for (Map.Entry<ResourceKey<Level>, LongLinkedOpenHashSet> entry : pendingChunks.entrySet()) {
+                LongLinkedOpenHashSet pending = entry.getValue();
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                
+                ServerLevel level = event.getServer().getLevel(entry.getKey());
+                if (level == null) {
+                    pending.clear();
+                    continue;
+                }
+                stampPendingChunks(level, pending);
+            }
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        synchronized (pendingChunks) {
+            lazyDimensions.clear();
+            pendingChunks.clear();
+        }
+        refreshJobs.clear();
+        BarrierRaster.clearCache();
+    }
+    
+    /**
+     * Brings queued chunks that are still loaded up to date, up to the per-tick limit.
+     */
+    private static void stampPendingChunks(ServerLevel level, LongLinkedOpenHashSet pending) {
+        BarrierSavedData data = BarrierSavedData.get(level);
+        ChunkSectionWriter writer = new ChunkSectionWriter(level);
+        BlockCounts counts = new BlockCounts();
+        int stamped = 0;
+        
+        while (!pending.isEmpty() && stamped < MAX_CHUNKS_PER_TICK) {
+            long chunkPos = pending.removeFirstLong();
+            
+            // Unloaded again before we got to it; it will be queued on its next load
+            if (!data.isStale(chunkPos)
+                    || level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)) == null) {
+                continue;
+            }
+            
+            reconcileChunk(writer, data, chunkPos, null, false, counts);
+            stamped++;
+        }
+        
+        writer.finish();
+        if (stamped > 0) {
+            LOGGER.debug("Updated barriers in {} chunks in {}: placed {}, removed {}",
+                stamped, level.dimension().location(), counts.placed, counts.removed);
+        }
+    }
+    
+    /**
+     * Checks whether a chunk holds a different wall from the target and is part of either.
+     */
+    private static boolean needsReconcile(BarrierSavedData data, long chunkPos) {
+        if (!data.isStale(chunkPos)) {
+            return false;
+        }
+        BarrierWallSpec target = data.getTarget();
+        return data.getStamped(chunkPos) != null
+            || (target != null && target.isWallChunk(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)));
+    }
+    
+    /**
+     * Collects every chunk whose stamped wall differs from the target.
+     */
+    private static LongSet getStaleChunks(BarrierSavedData data) {
+        LongSet chunks = new LongOpenHashSet();
+        for (long chunkPos : data.getStampedChunks()) {
+            if (data.isStale(chunkPos)) {
+                chunks.add(chunkPos);
+            }
+        }
+        if (data.getTarget() != null) {
+            for (long chunkPos : data.getTarget().getWallChunks()) {
+                if (data.isStale(chunkPos)) {
+                    chunks.add(chunkPos);
+                }
+            }
+        }
+        return chunks;
+    }
+    
+    /**
+     * Changes the wall in one chunk from what it holds to the target, touching only the
+     * columns and heights that differ between the two, and records the result.
+     * @param assumedOld wall to assume for chunks with no record, or null
+     * @param refill rewrite the target wall in full, repairing any missing blocks
+     */
+    private static void reconcileChunk(ChunkSectionWriter writer, BarrierSavedData data, long chunkPos,
+                                       BarrierWallSpec assumedOld, boolean refill, BlockCounts counts) {
+        int chunkX = ChunkPos.getX(chunkPos);
+        int chunkZ = ChunkPos.getZ(chunkPos);
+        BarrierWallSpec from = data.getStamped(chunkPos);
+        if (from == null) {
+            from = assumedOld;
+        }
+        BarrierWallSpec to = data.getTarget();
+        BlockState barrierState = Blocks.BARRIER.defaultBlockState();
+        long[] oldMask = from != null ? from.getColumnMask(chunkX, chunkZ) : BarrierRaster.EMPTY_MASK;
+        long[] newMask = to != null ? to.getColumnMask(chunkX, chunkZ) : BarrierRaster.EMPTY_MASK;
+        
+        for (int localX = 0; localX < 16; localX++) {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                boolean oldWall = BarrierRaster.isSet(oldMask, localX, localZ);
+                boolean newWall = BarrierRaster.isSet(newMask, localX, localZ);
+                int x = (chunkX << 4) + localX;
+                int z = (chunkZ << 4) + localZ;
+                
+                if (oldWall) {
+                    if (newWall) {
+                        // Only the heights the new wall no longer covers
+                        counts.removed += clearBarrierColumn(writer, x, z, from.minY(), Math.min(from.maxY(), to.minY() - 1));
+                        counts.removed += clearBarrierColumn(writer, x, z, Math.max(from.minY(), to.maxY() + 1), from.maxY());
+                    } else {
+                        counts.removed += clearBarrierColumn(writer, x, z, from.minY(), from.maxY());
+                    }
+                }
+                
+                if (newWall) {
+                    if (oldWall && !refill) {
+                        // Only the heights the old wall didn't cover
+                        counts.placed += fillColumn(writer, x, z, to.minY(), Math.min(to.maxY(), from.minY() - 1), barrierState);
+                        counts.placed += fillColumn(writer, x, z, Math.max(to.minY(), from.maxY() + 1), to.maxY(), barrierState);
+                    } else {
+                        counts.placed += fillColumn(writer, x, z, to.minY(), to.maxY(), barrierState);
+                    }
+                }
+            }
+        }
+        
+        data.setStamped(chunkPos, to != null && to.isWallChunk(chunkX, chunkZ) ? to : null);
+    }
     
     /**
      * Places barriers around all configured dimensions.
@@ -36,21 +261,35 @@ public class BarrierManager {
     }
     
     /**
-     * Places barriers around a specific dimension.
+     * Places barriers around a specific dimension, loading every perimeter chunk.
+     * Existing wall blocks are rewritten too, so this also repairs a damaged wall.
      * @return number of blocks placed
      */
     public static int placeBarriers(MinecraftServer server, DimensionConfig config) {
-        ResourceLocation dimensionLocation = ResourceLocation.fromNamespaceAndPath(
-            TheEscapeModFunctions.MODID, config.getName());
-        ResourceKey<Level> dimensionKey = ResourceKey.create(
-            net.minecraft.core.registries.Registries.DIMENSION, dimensionLocation);
+        if (config.isVirtualBarrier()) {
+            LOGGER.info("Dimension '{}' uses a virtual barrier, no blocks placed", config.getName());
+            return 0;
+        }
         
-        ServerLevel level = server.getLevel(dimensionKey);
+        ServerLevel level = server.getLevel(getDimensionKey(config));
         if (level != null) {
-            int radius = config.getWorldBorder();
-            int blocksPlaced = placeBarrierWall(level, radius);
-            LOGGER.info("Placed {} barrier blocks for dimension '{}' at radius {}", blocksPlaced, config.getName(), radius);
-            return blocksPlaced;
+            BarrierWallSpec spec = BarrierWallSpec.fromConfig(config, level);
+            BarrierSavedData data = BarrierSavedData.get(level);
+            data.setTarget(spec);
+            
+            LongSet chunks = getStaleChunks(data);
+            chunks.addAll(spec.getWallChunks());
+            
+            ChunkSectionWriter writer = new ChunkSectionWriter(level);
+            BlockCounts counts = new BlockCounts();
+            for (long chunkPos : chunks) {
+                reconcileChunk(writer, data, chunkPos, null, true, counts);
+            }
+            writer.finish();
+            
+            LOGGER.info("Placed {} barrier blocks for dimension '{}' with shape {} (removed {} from an older wall)",
+                counts.placed, config.getName(), spec.shape(), counts.removed);
+            return counts.placed;
         } else {
             LOGGER.warn("Could not find dimension '{}' to place barriers", config.getName());
             return 0;
@@ -58,63 +297,50 @@ public class BarrierManager {
     }
     
     /**
-     * Places a square wall of barrier blocks around the specified radius.
-     * @return number of blocks placed
+     * Writes a single column of the given state from minY to maxY (inclusive).
+     * @return number of blocks changed
      */
-    private static int placeBarrierWall(ServerLevel level, int radius) {
-        BlockState barrierState = Blocks.BARRIER.defaultBlockState();
-        int blocksPlaced = 0;
-        
-        // Place barriers in a square pattern around the perimeter
-        for (int y = MIN_BARRIER_Y; y <= MAX_BARRIER_Y; y++) {
-            // North and South walls (x = -radius and x = +radius)
-            for (int z = -radius; z <= radius; z++) {
-                // North wall
-                BlockPos northPos = new BlockPos(-radius, y, z);
-                level.setBlock(northPos, barrierState, 3);
-                blocksPlaced++;
-                
-                // South wall
-                BlockPos southPos = new BlockPos(radius, y, z);
-                level.setBlock(southPos, barrierState, 3);
-                blocksPlaced++;
-            }
-            
-            // East and West walls (z = -radius and z = +radius)
-            // Skip corners to avoid double-placing blocks
-            for (int x = -radius + 1; x < radius; x++) {
-                // West wall
-                BlockPos westPos = new BlockPos(x, y, -radius);
-                level.setBlock(westPos, barrierState, 3);
-                blocksPlaced++;
-                
-                // East wall
-                BlockPos eastPos = new BlockPos(x, y, radius);
-                level.setBlock(eastPos, barrierState, 3);
-                blocksPlaced++;
+    private static int fillColumn(ChunkSectionWriter writer, int x, int z, int minY, int maxY, BlockState state) {
+        int changed = 0;
+        for (int y = minY; y <= maxY; y++) {
+            if (writer.setBlock(x, y, z, state)) {
+                changed++;
             }
         }
-        
-        LOGGER.debug("Placed {} barrier blocks for radius {}", blocksPlaced, radius);
-        return blocksPlaced;
+        return changed;
+    }
+    
+    private static ResourceKey<Level> getDimensionKey(DimensionConfig config) {
+        ResourceLocation dimensionLocation = ResourceLocation.fromNamespaceAndPath(
+            TheEscapeModFunctions.MODID, config.getName());
+        return ResourceKey.create(net.minecraft.core.registries.Registries.DIMENSION, dimensionLocation);
     }
     
     /**
-     * Removes barriers around a specific dimension.
+     * Removes barriers around a specific dimension, loading every chunk that holds part of a wall.
+     * The wall stays removed until it is placed again or the server restarts.
      * @return number of blocks removed
      */
     public static int removeBarriers(MinecraftServer server, DimensionConfig config) {
-        ResourceLocation dimensionLocation = ResourceLocation.fromNamespaceAndPath(
-            TheEscapeModFunctions.MODID, config.getName());
-        ResourceKey<Level> dimensionKey = ResourceKey.create(
-            net.minecraft.core.registries.Registries.DIMENSION, dimensionLocation);
-        
-        ServerLevel level = server.getLevel(dimensionKey);
+        ServerLevel level = server.getLevel(getDimensionKey(config));
         if (level != null) {
-            int radius = config.getWorldBorder();
-            int blocksRemoved = removeBarrierWall(level, radius);
-            LOGGER.info("Removed {} barrier blocks for dimension '{}' at radius {}", blocksRemoved, config.getName(), radius);
-            return blocksRemoved;
+            BarrierWallSpec configured = BarrierWallSpec.fromConfig(config, level);
+            BarrierSavedData data = BarrierSavedData.get(level);
+            data.setTarget(null);
+            
+            // Also clear the configured wall in chunks with no record, e.g. walls placed by older versions
+            LongSet chunks = new LongOpenHashSet(data.getStampedChunks());
+            chunks.addAll(configured.getWallChunks());
+            
+            ChunkSectionWriter writer = new ChunkSectionWriter(level);
+            BlockCounts counts = new BlockCounts();
+            for (long chunkPos : chunks) {
+                reconcileChunk(writer, data, chunkPos, configured, false, counts);
+            }
+            writer.finish();
+            
+            LOGGER.info("Removed {} barrier blocks for dimension '{}'", counts.removed, config.getName());
+            return counts.removed;
         } else {
             LOGGER.warn("Could not find dimension '{}' to remove barriers", config.getName());
             return 0;
@@ -122,56 +348,164 @@ public class BarrierManager {
     }
     
     /**
-     * Removes barrier blocks from the specified radius.
+     * Replaces barrier blocks in a column with air, skipping sections without barriers in their palette.
      * @return number of blocks removed
      */
-    private static int removeBarrierWall(ServerLevel level, int radius) {
-        int blocksRemoved = 0;
-        
-        for (int y = MIN_BARRIER_Y; y <= MAX_BARRIER_Y; y++) {
-            // Remove North and South walls
-            for (int z = -radius; z <= radius; z++) {
-                BlockPos northPos = new BlockPos(-radius, y, z);
-                if (level.getBlockState(northPos).is(Blocks.BARRIER)) {
-                    level.setBlock(northPos, Blocks.AIR.defaultBlockState(), 3);
-                    blocksRemoved++;
-                }
-                
-                BlockPos southPos = new BlockPos(radius, y, z);
-                if (level.getBlockState(southPos).is(Blocks.BARRIER)) {
-                    level.setBlock(southPos, Blocks.AIR.defaultBlockState(), 3);
-                    blocksRemoved++;
-                }
-            }
+    private static int clearBarrierColumn(ChunkSectionWriter writer, int x, int z, int minY, int maxY) {
+        BlockState air = Blocks.AIR.defaultBlockState();
+        int removed = 0;
+        int y = minY;
+        
+        while (y <= maxY) {
+            int sectionTop = Math.min(maxY, (y | 15));
+            LevelChunkSection section = writer.getSection(x, y, z);
             
-            // Remove East and West walls
-            for (int x = -radius + 1; x < radius; x++) {
-                BlockPos westPos = new BlockPos(x, y, -radius);
-                if (level.getBlockState(westPos).is(Blocks.BARRIER)) {
-                    level.setBlock(westPos, Blocks.AIR.defaultBlockState(), 3);
-                    blocksRemoved++;
-                }
-                
-                BlockPos eastPos = new BlockPos(x, y, radius);
-                if (level.getBlockState(eastPos).is(Blocks.BARRIER)) {
-                    level.setBlock(eastPos, Blocks.AIR.defaultBlockState(), 3);
-                    blocksRemoved++;
+            if (section.maybeHas(state -> state.is(Blocks.BARRIER))) {
+                for (int sectionY = y; sectionY <= sectionTop; sectionY++) {
+                    if (section.getBlockState(x & 15, sectionY & 15, z & 15).is(Blocks.BARRIER)
+                            && writer.setBlock(x, sectionY, z, air)) {
+                        removed++;
+                    }
                 }
             }
+            y = sectionTop + 1;
+        }
+        return removed;
+    }
+    
+    /**
+     * Starts a background job that changes a dimension's wall to match its config.
+     * Only chunks whose wall differs are visited, and within them only the blocks that differ.
+     * @param progress receives progress messages while the job runs
+     * @return id of the job, or -1 if the wall is already up to date or the dimension is missing
+     */
+    public static int refreshBarriers(MinecraftServer server, DimensionConfig config, Consumer<String> progress) {
+        ServerLevel level = server.getLevel(getDimensionKey(config));
+        if (level == null) {
+            LOGGER.warn("Could not find dimension '{}' to refresh barriers", config.getName());
+            return -1;
+        }
+        
+        Integer running = refreshJobs.get(level.dimension());
+        if (running != null && WorldEditJobScheduler.getJob(running) != null) {
+            WorldEditJobScheduler.cancel(running);
+        }
+        
+        BarrierSavedData data = BarrierSavedData.get(level);
+        data.setTarget(config.isVirtualBarrier() ? null : BarrierWallSpec.fromConfig(config, level));
+        
+        // Chunks the job finds unloaded are left to the lazy path, so make sure it covers this dimension
+        synchronized (pendingChunks) {
+            if (lazyDimensions.add(level.dimension())) {
+                pendingChunks.computeIfAbsent(level.dimension(), key -> new LongLinkedOpenHashSet());
+            }
+        }
+        
+        LongSet staleChunks = getStaleChunks(data);
+        if (staleChunks.isEmpty()) {
+            LOGGER.info("Barriers for dimension '{}' are already up to date", config.getName());
+            return -1;
         }
         
-        LOGGER.debug("Removed {} barrier blocks for radius {}", blocksRemoved, radius);
-        return blocksRemoved;
+        int id = WorldEditJobScheduler.submit(new RefreshJob(level, config.getName(), new LongArrayList(staleChunks), progress));
+        refreshJobs.put(level.dimension(), id);
+        return id;
     }
     
     /**
-     * Refreshes barriers for a dimension (removes old ones and places new ones).
-     * @return number of blocks placed
+     * @return running refresh jobs keyed by dimension name
+     */
+    public static Map<String, Integer> getRefreshJobs() {
+        Map<String, Integer> jobs = new HashMap<>();
+        for (Map.Entry<ResourceKey<Level>, Integer> entry : refreshJobs.entrySet()) {
+            if (WorldEditJobScheduler.getJob(entry.getValue()) != null) {
+                jobs.put(entry.getKey().location().getPath(), entry.getValue());
+            }
+        }
+        return jobs;
+    }
+    
+    /**
+     * Running totals of barrier blocks placed and removed.
+     */
+    private static class BlockCounts {
+        int placed;
+        int removed;
+    }
+    
+    /**
+     * Tick-budgeted delta refresh of one dimension's wall.
+     * Only chunks that are loaded are written, since loading or generating one here could take
+     * the whole tick; the others are updated lazily as they load, as are the rest after a cancel.
      */
-    public static int refreshBarriers(MinecraftServer server, DimensionConfig config) {
-        int removed = removeBarriers(server, config);
-        int placed = placeBarriers(server, config);
-        LOGGER.info("Refreshed barriers for dimension '{}': removed {}, placed {}", config.getName(), removed, placed);
-        return placed;
+    private static class RefreshJob implements WorldEditJob {
+        // How often progress is reported, in nanoseconds
+        private static final long PROGRESS_INTERVAL = 5_000_000_000L;
+        
+        private final ServerLevel level;
+        private final String dimensionName;
+        private final LongArrayList chunks;
+        private final Consumer<String> progress;
+        private final BlockCounts counts = new BlockCounts();
+        private int nextChunk = 0;
+        private int deferredChunks = 0;
+        private long lastReport = System.nanoTime();
+        
+        RefreshJob(ServerLevel level, String dimensionName, LongArrayList chunks, Consumer<String> progress) {
+            this.level = level;
+            this.dimensionName = dimensionName;
+            this.chunks = chunks;
+            this.progress = progress;
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Refresh barriers in " + dimensionName;
+        }
+        
+        @Override
+        public boolean tick(long deadlineNanos) {
+            BarrierSavedData data = BarrierSavedData.get(level);
+            ChunkSectionWriter writer = new ChunkSectionWriter(level);
+            
+            while (nextChunk < chunks.size() && System.nanoTime() < deadlineNanos) {
+                long chunkPos = chunks.getLong(nextChunk++);
+                if (!data.isStale(chunkPos)) {
+                    continue;
+                }
+                if (level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)) == null) {
+                    deferredChunks++;
+                    continue;
+                }
+                reconcileChunk(writer, data, chunkPos, null, false, counts);
+            }
+            writer.finish();
+            
+            if (System.nanoTime() - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = System.nanoTime();
+                progress.accept(String.format("Refreshing barriers in %s: %d%% (%d/%d chunks)",
+                    dimensionName, (int) (getProgress() * 100), nextChunk, chunks.size()));
+            }
+            return nextChunk >= chunks.size();
+        }
+        
+        @Override
+        public float getProgress() {
+            return chunks.isEmpty() ? 1.0f : (float) nextChunk / chunks.size();
+        }
+        
+        @Override
+        public void onStopped(boolean cancelled) {
+            refreshJobs.remove(level.dimension());
+            if (cancelled) {
+                progress.accept(String.format("Cancelled barrier refresh in %s after %d/%d chunks; the rest update as they load",
+                    dimensionName, nextChunk, chunks.size()));
+            } else {
+                progress.accept(String.format("Refreshed barriers in %s: placed %d, removed %d across %d chunks; %d unloaded chunks update as they load",
+                    dimensionName, counts.placed, counts.removed, chunks.size() - deferredChunks, deferredChunks));
+            }
+            LOGGER.info("Barrier refresh in '{}' {}: placed {}, removed {}, {} chunks left to load",
+                dimensionName, cancelled ? "cancelled" : "finished", counts.placed, counts.removed, deferredChunks);
+        }
     }
 }
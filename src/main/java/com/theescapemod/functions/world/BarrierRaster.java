@@ -0,0 +1,105 @@
+package com.theescapemod.functions.world;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rasterised form of a {@link BarrierShape}: the set of chunks the wall passes through,
+ * and for each of them a 256-bit mask of the columns that belong to the wall.
+ * Masks are computed once per chunk and shared by lazy, bulk and refresh placement.
+ */
+public class BarrierRaster {
+    static final long[] EMPTY_MASK = new long[4];
+    private static final Map<BarrierShape, BarrierRaster> RASTERS = new HashMap<>();
+    
+    private final BarrierShape shape;
+    private final LongSet wallChunks;
+    private final Long2ObjectMap<long[]> masks = new Long2ObjectOpenHashMap<>();
+    
+    private BarrierRaster(BarrierShape shape) {
+        this.shape = shape;
+        
+        // Candidate chunks from the shape, narrowed down to those with at least one wall column
+        LongSet candidates = new LongOpenHashSet();
+        shape.collectWallChunks(candidates);
+        LongSet chunks = new LongOpenHashSet();
+        for (long chunkPos : candidates) {
+            long[] mask = computeMask(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos));
+            if (!isEmpty(mask)) {
+                masks.put(chunkPos, mask);
+                chunks.add(chunkPos);
+            }
+        }
+        this.wallChunks = LongSets.unmodifiable(chunks);
+    }
+    
+    /**
+     * Returns the shared raster for a shape, computing it on first use.
+     */
+    public static synchronized BarrierRaster of(BarrierShape shape) {
+        return RASTERS.computeIfAbsent(shape, BarrierRaster::new);
+    }
+    
+    /**
+     * Drops cached rasters, e.g. when the server stops.
+     */
+    public static synchronized void clearCache() {
+        RASTERS.clear();
+    }
+    
+    public BarrierShape getShape() {
+        return shape;
+    }
+    
+    public LongSet getWallChunks() {
+        return wallChunks;
+    }
+    
+    public boolean isWallChunk(int chunkX, int chunkZ) {
+        return wallChunks.contains(ChunkPos.asLong(chunkX, chunkZ));
+    }
+    
+    /**
+     * @return the column mask of a chunk; an all-zero mask if the wall doesn't pass through it
+     */
+    public long[] getMask(int chunkX, int chunkZ) {
+        long[] mask = masks.get(ChunkPos.asLong(chunkX, chunkZ));
+        return mask != null ? mask : EMPTY_MASK;
+    }
+    
+    /**
+     * Checks a column in a mask, using chunk-local coordinates.
+     */
+    public static boolean isSet(long[] mask, int localX, int localZ) {
+        int bit = (localZ << 4) | localX;
+        return (mask[bit >> 6] & (1L << (bit & 63))) != 0;
+    }
+    
+    public boolean isWallColumn(int x, int z) {
+        return isSet(getMask(x >> 4, z >> 4), x & 15, z & 15);
+    }
+    
+    private long[] computeMask(int chunkX, int chunkZ) {
+        long[] mask = new long[4];
+        for (int localZ = 0; localZ < 16; localZ++) {
+            for (int localX = 0; localX < 16; localX++) {
+                if (shape.isWallColumn((chunkX << 4) + localX, (chunkZ << 4) + localZ)) {
+                    int bit = (localZ << 4) | localX;
+                    mask[bit >> 6] |= 1L << (bit & 63);
+                }
+            }
+        }
+        return mask;
+    }
+    
+    private static boolean isEmpty(long[] mask) {
+        return (mask[0] | mask[1] | mask[2] | mask[3]) == 0;
+    }
+}
@@ -0,0 +1,120 @@
+package com.theescapemod.functions.world;
+
+import com.theescapemod.functions.TheEscapeModFunctions;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-dimension record of the barrier wall that should exist (the target) and of the
+ * wall each perimeter chunk actually holds. Lazy placement and refreshes use it to
+ * only ever touch the difference between the two.
+ */
+public class BarrierSavedData extends SavedData {
+    private static final String DATA_NAME = TheEscapeModFunctions.MODID + "_barriers";
+    
+    private BarrierWallSpec target;
+    private final Long2ObjectMap<BarrierWallSpec> stampedChunks = new Long2ObjectOpenHashMap<>();
+    
+    public static BarrierSavedData get(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(
+            new SavedData.Factory<>(BarrierSavedData::new, BarrierSavedData::load, null), DATA_NAME);
+    }
+    
+    /**
+     * @return the wall that should exist in this dimension, or null for none
+     */
+    public BarrierWallSpec getTarget() {
+        return target;
+    }
+    
+    public void setTarget(BarrierWallSpec newTarget) {
+        if (!Objects.equals(target, newTarget)) {
+            target = newTarget;
+            setDirty();
+        }
+    }
+    
+    /**
+     * @return the wall currently stamped into a chunk, or null if it holds none
+     */
+    public BarrierWallSpec getStamped(long chunkPos) {
+        return stampedChunks.get(chunkPos);
+    }
+    
+    /**
+     * Records the wall a chunk now holds; null means the chunk holds no wall.
+     */
+    public void setStamped(long chunkPos, BarrierWallSpec spec) {
+        BarrierWallSpec previous = spec != null ? stampedChunks.put(chunkPos, spec) : stampedChunks.remove(chunkPos);
+        if (!Objects.equals(previous, spec)) {
+            setDirty();
+        }
+    }
+    
+    public LongSet getStampedChunks() {
+        return stampedChunks.keySet();
+    }
+    
+    public int getStampedCount() {
+        return stampedChunks.size();
+    }
+    
+    /**
+     * Checks whether a chunk holds a different wall from the target.
+     */
+    public boolean isStale(long chunkPos) {
+        return !Objects.equals(stampedChunks.get(chunkPos), target);
+    }
+    
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider registries) {
+        if (target != null) {
+            tag.put("Target", target.save());
+        }
+        
+        // Chunks are grouped by the wall they hold, as most share the same one
+        Map<BarrierWallSpec, LongArrayList> chunksBySpec = new HashMap<>();
+        for (Long2ObjectMap.Entry<BarrierWallSpec> entry : stampedChunks.long2ObjectEntrySet()) {
+            chunksBySpec.computeIfAbsent(entry.getValue(), spec -> new LongArrayList()).add(entry.getLongKey());
+        }
+        
+        ListTag walls = new ListTag();
+        for (Map.Entry<BarrierWallSpec, LongArrayList> entry : chunksBySpec.entrySet()) {
+            CompoundTag wall = new CompoundTag();
+            wall.put("Spec", entry.getKey().save());
+            wall.putLongArray("Chunks", entry.getValue().toLongArray());
+            walls.add(wall);
+        }
+        tag.put("Walls", walls);
+        return tag;
+    }
+    
+    private static BarrierSavedData load(CompoundTag tag, HolderLookup.Provider registries) {
+        BarrierSavedData data = new BarrierSavedData();
+        if (tag.contains("Target")) {
+            data.target = BarrierWallSpec.load(tag.getCompound("Target"));
+        }
+        
+        ListTag walls = tag.getList("Walls", Tag.TAG_COMPOUND);
+        for (int i = 0; i < walls.size(); i++) {
+            CompoundTag wall = walls.getCompound(i);
+            BarrierWallSpec spec = BarrierWallSpec.load(wall.getCompound("Spec"));
+            for (long chunkPos : wall.getLongArray("Chunks")) {
+                data.stampedChunks.put(chunkPos, spec);
+            }
+        }
+        return data;
+    }
+}
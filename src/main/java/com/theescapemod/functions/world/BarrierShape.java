@@ -0,0 +1,225 @@
+package com.theescapemod.functions.world;
+
+import com.theescapemod.functions.dimension.DimensionConfig;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.Arrays;
+
+/**
+ * Outline of a barrier wall, centred on 0,0.
+ * A shape describes the filled area it encloses; the wall is made of the columns on the
+ * edge of that area. {@link BarrierRaster} turns this into per-chunk column masks.
+ */
+public interface BarrierShape {
+    /**
+     * Checks whether a column is inside the shape or on its wall.
+     */
+    boolean contains(int x, int z);
+    
+    /**
+     * Adds every chunk that may hold a wall column. Chunks without one may be included too.
+     */
+    void collectWallChunks(LongSet chunks);
+    
+    CompoundTag save();
+    
+    /**
+     * Checks whether a column lies on the wall, i.e. inside the shape with a neighbour outside it.
+     */
+    default boolean isWallColumn(int x, int z) {
+        return contains(x, z)
+            && (!contains(x - 1, z) || !contains(x + 1, z) || !contains(x, z - 1) || !contains(x, z + 1));
+    }
+    
+    /**
+     * Builds the shape a dimension config asks for. The world border is used as the radius.
+     */
+    static BarrierShape fromConfig(DimensionConfig config) {
+        return switch (config.getBarrierShape()) {
+            case DimensionConfig.BARRIER_SHAPE_CIRCLE -> new Circle(config.getWorldBorder());
+            case DimensionConfig.BARRIER_SHAPE_POLYGON -> Polygon.fromPoints(config.getBarrierPolygon());
+            default -> new Square(config.getWorldBorder());
+        };
+    }
+    
+    static BarrierShape load(CompoundTag tag) {
+        return switch (tag.getString("Type")) {
+            case DimensionConfig.BARRIER_SHAPE_CIRCLE -> new Circle(tag.getInt("Radius"));
+            case DimensionConfig.BARRIER_SHAPE_POLYGON -> new Polygon(tag.getIntArray("Points"));
+            default -> new Square(tag.getInt("Radius"));
+        };
+    }
+    
+    /**
+     * Square wall with its sides at x = +-radius and z = +-radius.
+     */
+    record Square(int radius) implements BarrierShape {
+        @Override
+        public boolean contains(int x, int z) {
+            return Math.abs(x) <= radius && Math.abs(z) <= radius;
+        }
+        
+        @Override
+        public boolean isWallColumn(int x, int z) {
+            return Math.max(Math.abs(x), Math.abs(z)) == radius;
+        }
+        
+        @Override
+        public void collectWallChunks(LongSet chunks) {
+            int wallMin = Math.floorDiv(-radius, 16);
+            int wallMax = Math.floorDiv(radius, 16);
+            for (int i = wallMin; i <= wallMax; i++) {
+                chunks.add(ChunkPos.asLong(wallMin, i));
+                chunks.add(ChunkPos.asLong(wallMax, i));
+                chunks.add(ChunkPos.asLong(i, wallMin));
+                chunks.add(ChunkPos.asLong(i, wallMax));
+            }
+        }
+        
+        @Override
+        public CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putString("Type", DimensionConfig.BARRIER_SHAPE_SQUARE);
+            tag.putInt("Radius", radius);
+            return tag;
+        }
+    }
+    
+    /**
+     * Circular wall containing every column within radius of the centre.
+     */
+    record Circle(int radius) implements BarrierShape {
+        @Override
+        public boolean contains(int x, int z) {
+            return (long) x * x + (long) z * z <= (long) radius * radius;
+        }
+        
+        @Override
+        public void collectWallChunks(LongSet chunks) {
+            for (int x = -radius; x <= radius; x++) {
+                int top = halfHeight(x);
+                // Columns above the lower of the two neighbouring columns have an outside neighbour
+                int neighbour = Math.min(halfHeight(x - 1), halfHeight(x + 1));
+                int low = Math.max(0, neighbour + 1);
+                if (low > top) {
+                    low = top;
+                }
+                
+                int chunkX = Math.floorDiv(x, 16);
+                for (int chunkZ = Math.floorDiv(low, 16); chunkZ <= Math.floorDiv(top, 16); chunkZ++) {
+                    chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+                }
+                for (int chunkZ = Math.floorDiv(-top, 16); chunkZ <= Math.floorDiv(-low, 16); chunkZ++) {
+                    chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+                }
+            }
+        }
+        
+        /**
+         * @return largest z inside the circle for the given x, or -1 if the column is outside
+         */
+        private int halfHeight(int x) {
+            long remaining = (long) radius * radius - (long) x * x;
+            if (remaining < 0) {
+                return -1;
+            }
+            long z = (long) Math.sqrt(remaining);
+            while (z * z > remaining) {
+                z--;
+            }
+            while ((z + 1) * (z + 1) <= remaining) {
+                z++;
+            }
+            return (int) z;
+        }
+        
+        @Override
+        public CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putString("Type", DimensionConfig.BARRIER_SHAPE_CIRCLE);
+            tag.putInt("Radius", radius);
+            return tag;
+        }
+    }
+    
+    /**
+     * Wall following an arbitrary simple polygon given as x,z pairs.
+     * A column is inside if its centre is inside the polygon (even-odd rule).
+     */
+    record Polygon(int[] points) implements BarrierShape {
+        
+        static Polygon fromPoints(int[][] vertices) {
+            int[] points = new int[vertices.length * 2];
+            for (int i = 0; i < vertices.length; i++) {
+                points[i * 2] = vertices[i][0];
+                points[i * 2 + 1] = vertices[i][1];
+            }
+            return new Polygon(points);
+        }
+        
+        @Override
+        public boolean contains(int x, int z) {
+            double px = x + 0.5;
+            double pz = z + 0.5;
+            int count = points.length / 2;
+            boolean inside = false;
+            
+            for (int i = 0, j = count - 1; i < count; j = i++) {
+                double xi = points[i * 2], zi = points[i * 2 + 1];
+                double xj = points[j * 2], zj = points[j * 2 + 1];
+                if ((zi > pz) != (zj > pz) && px < (xj - xi) * (pz - zi) / (zj - zi) + xi) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+        
+        @Override
+        public void collectWallChunks(LongSet chunks) {
+            int count = points.length / 2;
+            for (int i = 0; i < count; i++) {
+                int j = (i + 1) % count;
+                double x0 = points[i * 2], z0 = points[i * 2 + 1];
+                double x1 = points[j * 2], z1 = points[j * 2 + 1];
+                
+                // Walk the edge in half-block steps; wall columns are at most a block away from it
+                int steps = (int) Math.ceil(Math.max(Math.abs(x1 - x0), Math.abs(z1 - z0)) * 2) + 1;
+                for (int step = 0; step <= steps; step++) {
+                    double t = (double) step / steps;
+                    int x = (int) Math.floor(x0 + (x1 - x0) * t);
+                    int z = (int) Math.floor(z0 + (z1 - z0) * t);
+                    for (int dx = -1; dx <= 1; dx++) {
+                        for (int dz = -1; dz <= 1; dz++) {
+                            chunks.add(ChunkPos.asLong((x + dx) >> 4, (z + dz) >> 4));
+                        }
+                    }
+                }
+            }
+        }
+        
+        @Override
+        public CompoundTag save() {
+            CompoundTag tag = new CompoundTag();
+            tag.putString("Type", DimensionConfig.BARRIER_SHAPE_POLYGON);
+            tag.putIntArray("Points", points);
+            return tag;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Polygon polygon && Arrays.equals(points, polygon.points);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(points);
+        }
+        
+        @Override
+        public String toString() {
+            return "Polygon[points=" + Arrays.toString(points) + "]";
+        }
+    }
+}
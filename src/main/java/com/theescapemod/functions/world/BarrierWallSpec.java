@@ -0,0 +1,70 @@
+package com.theescapemod.functions.world;
+
+import com.theescapemod.functions.dimension.DimensionConfig;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.LevelHeightAccessor;
+
+/**
+ * Describes one barrier wall: its outline around 0,0 and the height range it covers.
+ * Stored per dimension so a refresh can work out exactly which blocks changed.
+ */
+public record BarrierWallSpec(BarrierShape shape, int minY, int maxY) {
+    // Height range for barriers (covers most of the world height)
+    private static final int MIN_BARRIER_Y = -64;
+    private static final int MAX_BARRIER_Y = 320;
+    
+    /**
+     * Builds the wall a dimension config asks for, clamped to the level's build height.
+     */
+    public static BarrierWallSpec fromConfig(DimensionConfig config, LevelHeightAccessor level) {
+        return new BarrierWallSpec(
+            BarrierShape.fromConfig(config),
+            Math.max(MIN_BARRIER_Y, level.getMinBuildHeight()),
+            Math.min(MAX_BARRIER_Y, level.getMaxBuildHeight() - 1));
+    }
+    
+    public BarrierRaster raster() {
+        return BarrierRaster.of(shape);
+    }
+    
+    /**
+     * Checks whether a column lies on the wall.
+     */
+    public boolean isWallColumn(int x, int z) {
+        return raster().isWallColumn(x, z);
+    }
+    
+    /**
+     * Checks whether any column of a chunk lies on the wall.
+     */
+    public boolean isWallChunk(int chunkX, int chunkZ) {
+        return raster().isWallChunk(chunkX, chunkZ);
+    }
+    
+    /**
+     * @return every chunk that contains part of the wall
+     */
+    public LongSet getWallChunks() {
+        return raster().getWallChunks();
+    }
+    
+    /**
+     * @return the wall columns of a chunk, see {@link BarrierRaster#isSet}
+     */
+    public long[] getColumnMask(int chunkX, int chunkZ) {
+        return raster().getMask(chunkX, chunkZ);
+    }
+    
+    public CompoundTag save() {
+        CompoundTag tag = new CompoundTag();
+        tag.put("Shape", shape.save());
+        tag.putInt("MinY", minY);
+        tag.putInt("MaxY", maxY);
+        return tag;
+    }
+    
+    public static BarrierWallSpec load(CompoundTag tag) {
+        return new BarrierWallSpec(BarrierShape.load(tag.getCompound("Shape")), tag.getInt("MinY"), tag.getInt("MaxY"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.theescapemod.functions.world;
+
+import com.theescapemod.functions.TheEscapeModFunctions;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads the chunks a world edit is about to write to before it starts, and keeps them loaded
+ * until it is done. Chunks are requested with tickets, so loading and generation happen on the
+ * chunk system's own threads instead of as a synchronous load inside the first write; callers
+ * poll {@link #isLoaded()} each tick and only start writing once it returns true.
+ * At most {@link #MAX_WINDOW} chunks are held at once. Larger footprints are loaded window by
+ * window in their order: callers check each chunk range with {@link #isLoaded(int, int, int, int)}
+ * before writing to it, which moves the window on once they reach chunks past it.
+ */
+public class ChunkPreloader {
+    private static final TicketType<ChunkPos> TICKET = TicketType.create(
+        TheEscapeModFunctions.MODID + ":preload", Comparator.comparingLong(ChunkPos::toLong));
+    
+    public static final int MAX_WINDOW = 4096;
+    
+    private final ServerLevel level;
+    private final LongArrayList chunks;
+    // Position of each chunk in the footprint
+    private final Long2IntOpenHashMap indices;
+    private final LongArrayList waiting = new LongArrayList();
+    private int windowStart;
+    private int windowEnd;
+    private boolean ticketed;
+    
+    public ChunkPreloader(ServerLevel level, LongArrayList chunks) {
+        this.level = level;
+        this.chunks = chunks;
+        this.indices = new Long2IntOpenHashMap(chunks.size());
+        indices.defaultReturnValue(-1);
+        for (int i = 0; i < chunks.size(); i++) {
+            indices.putIfAbsent(chunks.getLong(i), i);
+        }
+        setWindow(0, Math.min(chunks.size(), MAX_WINDOW));
+    }
+    
+    /**
+     * @return every chunk overlapping the block area, column by column along X and then Z
+     */
+    public static LongArrayList getFootprint(int minX, int minZ, int maxX, int maxZ) {
+        LongArrayList footprint = new LongArrayList();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                footprint.add(ChunkPos.asLong(chunkX, chunkZ));
+            }
+        }
+        return footprint;
+    }
+    
+    /**
+     * Finds which of the chunks have been generated at least up to their noise step, from the
+     * chunks in memory and the saved status of the rest. Nothing is loaded or generated.
+     * A chunk in memory counts once it is ready for its noise step, as that step may already be
+     * running and so be too late for anything registered with the generator now.
+     * Must be called on the server thread; the result completes once the reads are done.
+     */
+    public static CompletableFuture<LongSet> findGenerated(ServerLevel level, LongArrayList chunks) {
+        ServerChunkCache chunkSource = level.getChunkSource();
+        LongSet generated = LongSets.synchronize(new LongOpenHashSet());
+        List<CompletableFuture<?>> reads = new ArrayList<>();
+        
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunkPos = chunks.getLong(i);
+            ChunkHolder holder = chunkSource.chunkMap.getVisibleChunkIfPresent(chunkPos);
+            ChunkStatus status = holder != null ? holder.getLatestStatus() : null;
+            if (status != null && status.isOrAfter(ChunkStatus.BIOMES)) {
+                generated.add(chunkPos);
+                continue;
+            }
+            reads.add(chunkSource.chunkMap.read(new ChunkPos(chunkPos)).thenAccept(tag -> {
+                if (tag.isPresent() && ChunkStatus.byName(tag.get().getString("Status")).isOrAfter(ChunkStatus.NOISE)) {
+                    generated.add(chunkPos);
+                }
+            }));
+        }
+        return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).thenApply(ignored -> generated);
+    }
+    
+    /**
+     * Requests the chunks of the current window on the first call, then checks which have arrived.
+     * @return true once every chunk of the window is loaded
+     */
+    public boolean isLoaded() {
+        ServerChunkCache chunkSource = level.getChunkSource();
+        if (!ticketed) {
+            ticketed = true;
+            for (int i = windowStart; i < windowEnd; i++) {
+                ChunkPos pos = new ChunkPos(chunks.getLong(i));
+                chunkSource.addRegionTicket(TICKET, pos, 0, pos);
+            }
+        }
+        
+        // Drop the chunks that have loaded, keeping the order of the rest
+        int kept = 0;
+        for (int i = 0; i < waiting.size(); i++) {
+            long chunkPos = waiting.getLong(i);
+            if (chunkSource.getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)) == null) {
+                waiting.set(kept++, chunkPos);
+            }
+        }
+        waiting.size(kept);
+        return kept == 0;
+    }
+    
+    /**
+     * Checks the chunks in the range before writing to them. If the range reaches outside the
+     * current window, the window's tickets are released and a new window starting at the first
+     * chunk of the range is requested. Chunks outside the footprint are not checked.
+     * @return true once every chunk of the range is loaded
+     */
+    public boolean isLoaded(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                int index = indices.get(ChunkPos.asLong(chunkX, chunkZ));
+                if (index >= 0) {
+                    first = Math.min(first, index);
+                    last = Math.max(last, index);
+                }
+            }
+        }
+        if (last < 0) {
+            return true;
+        }
+        
+        if (first < windowStart || last >= windowEnd) {
+            release();
+            setWindow(first, Math.max(last + 1, Math.min(chunks.size(), first + MAX_WINDOW)));
+        }
+        return isLoaded();
+    }
+    
+    /**
+     * @return true while chunks of the current window have not arrived yet
+     */
+    public boolean isWaiting() {
+        return !waiting.isEmpty();
+    }
+    
+    /**
+     * @return number of chunks in the current window
+     */
+    public int getChunkCount() {
+        return windowEnd - windowStart;
+    }
+    
+    public int getLoadedCount() {
+        return getChunkCount() - waiting.size();
+    }
+    
+    /**
+     * Removes the tickets of the current window, letting its chunks unload again once nothing else needs them.
+     */
+    public void release() {
+        if (!ticketed) {
+            return;
+        }
+        ticketed = false;
+        
+        ServerChunkCache chunkSource = level.getChunkSource();
+        for (int i = windowStart; i < windowEnd; i++) {
+            ChunkPos pos = new ChunkPos(chunks.getLong(i));
+            chunkSource.removeRegionTicket(TICKET, pos, 0, pos);
+        }
+        setWindow(windowStart, windowEnd);
+    }
+    
+    private void setWindow(int start, int end) {
+        windowStart = start;
+        windowEnd = end;
+        waiting.clear();
+        waiting.addAll(chunks.subList(start, end));
+    }
+}
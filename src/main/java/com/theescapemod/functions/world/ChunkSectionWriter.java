@@ -0,0 +1,305 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.ai.village.poi.PoiTypes;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.EntityBlock;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LightEngine;
+import org.slf4j.Logger;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Writes blocks straight into the {@link LevelChunkSection} palettes of a level,
+ * bypassing the per-block neighbour updates, light checks and client packets of
+ * {@code Level.setBlock}. Heightmaps of every touched chunk are brought up to date
+ * when {@link #finish()} is called, which then hands the chunks to {@link DirtyChunkBatch}
+ * to be resent once at the end of the tick, together with the positions whose light
+ * needs rechecking.
+ * Must only be used from the server thread.
+ */
+public class ChunkSectionWriter {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    // Words in a section's bitset of positions to recheck light at
+    static final int LIGHT_CHECK_WORDS = 4096 / 64;
+    
+    private static final Set<Heightmap.Types> HEIGHTMAPS = EnumSet.of(
+        Heightmap.Types.WORLD_SURFACE,
+        Heightmap.Types.OCEAN_FLOOR,
+        Heightmap.Types.MOTION_BLOCKING,
+        Heightmap.Types.MOTION_BLOCKING_NO_LEAVES);
+    
+    private final ServerLevel level;
+    private final Long2ObjectLinkedOpenHashMap<DirtyChunk> dirtyChunks = new Long2ObjectLinkedOpenHashMap<>();
+    private final BlockPos.MutableBlockPos lightPos = new BlockPos.MutableBlockPos();
+    
+    // Cache of the chunk touched last, since callers usually write chunk by chunk
+    private long cachedChunkKey = Long.MIN_VALUE;
+    private DirtyChunk cachedChunk;
+    
+    public ChunkSectionWriter(ServerLevel level) {
+        this.level = level;
+    }
+    
+    public ServerLevel getLevel() {
+        return level;
+    }
+    
+    /**
+     * Sets a block, loading its chunk if needed.
+     * @return true if the stored state changed
+     */
+    public boolean setBlock(int x, int y, int z, BlockState state) {
+        if (y < level.getMinBuildHeight() || y >= level.getMaxBuildHeight()) {
+            return false;
+        }
+        
+        DirtyChunk dirty = getDirtyChunk(x >> 4, z >> 4);
+        LevelChunk chunk = dirty.chunk;
+        int sectionIndex = chunk.getSectionIndex(y);
+        LevelChunkSection section = chunk.getSection(sectionIndex);
+        
+        BlockState oldState = section.getBlockState(x & 15, y & 15, z & 15);
+        if (oldState == state) {
+            return false;
+        }
+        
+        dirty.markSection(sectionIndex, section.hasOnlyAir());
+        section.setBlockState(x & 15, y & 15, z & 15, state, false);
+        
+        // As LevelChunk.setBlockState does, but the light check itself waits for the batch
+        if (LightEngine.hasDifferentLightProperties(chunk, lightPos.set(x, y, z), oldState, state)) {
+            chunk.getSkyLightSources().update(chunk, x & 15, y, z & 15);
+            dirty.markLightCheck(sectionIndex, x, y, z);
+        }
+        
+        if (oldState.hasBlockEntity() || state.hasBlockEntity()) {
+            updateBlockEntity(chunk, new BlockPos(x, y, z), state);
+        }
+        if (PoiTypes.hasPoi(oldState) || PoiTypes.hasPoi(state)) {
+            level.onBlockStateChange(new BlockPos(x, y, z), oldState, state);
+        }
+        return true;
+    }
+    
+    /**
+     * Brings the block entity at a position in line with its new state, without the
+     * onPlace/onRemove callbacks and lighting work of {@code LevelChunk.setBlockState}.
+     */
+    private static void updateBlockEntity(LevelChunk chunk, BlockPos pos, BlockState state) {
+        BlockEntity existing = chunk.getBlockEntity(pos, LevelChunk.EntityCreationType.CHECK);
+        if (existing != null && (!state.hasBlockEntity() || !existing.isValidBlockState(state))) {
+            chunk.removeBlockEntity(pos);
+            existing = null;
+        }
+        if (!state.hasBlockEntity()) {
+            return;
+        }
+        
+        if (existing != null) {
+            existing.setBlockState(state);
+        } else if (state.getBlock() instanceof EntityBlock entityBlock) {
+            BlockEntity created = entityBlock.newBlockEntity(pos, state);
+            if (created != null) {
+                chunk.addAndRegisterBlockEntity(created);
+            }
+        }
+    }
+    
+    /**
+     * Reads a block through the same chunk cache used for writing.
+     */
+    public BlockState getBlockState(int x, int y, int z) {
+        DirtyChunk dirty = getDirtyChunk(x >> 4, z >> 4);
+        return dirty.chunk.getSection(dirty.chunk.getSectionIndex(y)).getBlockState(x & 15, y & 15, z & 15);
+    }
+    
+    /**
+     * Returns the section of a loaded chunk containing the given block, loading the chunk if needed.
+     * Callers that only read may use this to skip whole sections cheaply.
+     */
+    public LevelChunkSection getSection(int x, int y, int z) {
+        LevelChunk chunk = getDirtyChunk(x >> 4, z >> 4).chunk;
+        return chunk.getSection(chunk.getSectionIndex(y));
+    }
+    
+    /**
+     * Replaces a whole section with a copy of the given states, keeping its biomes.
+     * Refused when either side holds block entities or points of interest, as those
+     * need per-block registration; the caller then falls back to {@link #setBlock}.
+     * @param onlyIfEmpty only replace the section if it currently holds nothing but air
+     * @return true if the section was replaced
+     */
+    public boolean replaceSection(int x, int y, int z, PalettedContainer<BlockState> states, boolean onlyIfEmpty) {
+        if (y < level.getMinBuildHeight() || y >= level.getMaxBuildHeight()) {
+            return false;
+        }
+        
+        DirtyChunk dirty = getDirtyChunk(x >> 4, z >> 4);
+        LevelChunk chunk = dirty.chunk;
+        int sectionIndex = chunk.getSectionIndex(y);
+        LevelChunkSection section = chunk.getSection(sectionIndex);
+        boolean empty = section.hasOnlyAir();
+        if (onlyIfEmpty && !empty) {
+            return false;
+        }
+        if (!empty && section.maybeHas(ChunkSectionWriter::needsRegistration)) {
+            return false;
+        }
+        if (states.maybeHas(ChunkSectionWriter::needsRegistration)) {
+            return false;
+        }
+        
+        dirty.markSection(sectionIndex, empty);
+        LevelChunkSection replacement = new LevelChunkSection(states.copy(), section.getBiomes());
+        
+        // Light changes are found position by position, as setBlock would have
+        int baseX = x & ~15;
+        int baseY = y & ~15;
+        int baseZ = z & ~15;
+        for (int localY = 0; localY < 16; localY++) {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                for (int localX = 0; localX < 16; localX++) {
+                    BlockState oldState = section.getBlockState(localX, localY, localZ);
+                    BlockState newState = replacement.getBlockState(localX, localY, localZ);
+                    if (oldState != newState && LightEngine.hasDifferentLightProperties(
+                            chunk, lightPos.set(baseX + localX, baseY + localY, baseZ + localZ), oldState, newState)) {
+                        dirty.markLightCheck(sectionIndex, localX, localY, localZ);
+                    }
+                }
+            }
+        }
+        
+        chunk.getSections()[sectionIndex] = replacement;
+        long[] lightChecks = dirty.lightChecks[sectionIndex];
+        if (lightChecks != null) {
+            // Top down, so each column's source is found before the positions below it are checked
+            for (int localY = 15; localY >= 0; localY--) {
+                for (int localZ = 0; localZ < 16; localZ++) {
+                    for (int localX = 0; localX < 16; localX++) {
+                        if (DirtyChunk.isSet(lightChecks, localX, localY, localZ)) {
+                            chunk.getSkyLightSources().update(chunk, localX, baseY + localY, localZ);
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return index of a position within its section's light check bitset, see {@link DirtyChunkBatch}
+     */
+    static int lightCheckIndex(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+    
+    private static boolean needsRegistration(BlockState state) {
+        return state.hasBlockEntity() || PoiTypes.hasPoi(state);
+    }
+    
+    /**
+     * @return number of chunks that have been touched since the last finish
+     */
+    public int getTouchedChunkCount() {
+        return dirtyChunks.size();
+    }
+    
+    private DirtyChunk getDirtyChunk(int chunkX, int chunkZ) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        if (key == cachedChunkKey) {
+            return cachedChunk;
+        }
+        
+        DirtyChunk dirty = dirtyChunks.get(key);
+        if (dirty == null) {
+            dirty = new DirtyChunk(level.getChunk(chunkX, chunkZ));
+            dirtyChunks.put(key, dirty);
+        }
+        
+        cachedChunkKey = key;
+        cachedChunk = dirty;
+        return dirty;
+    }
+    
+    /**
+     * Finalises every touched chunk: updates heightmaps now and queues one light pass
+     * and one full chunk packet for the end of the tick.
+     * @return number of chunks that were changed
+     */
+    public int finish() {
+        int changedChunks = 0;
+        
+        for (DirtyChunk dirty : dirtyChunks.values()) {
+            if (!dirty.changed) {
+                continue;
+            }
+            changedChunks++;
+            
+            LevelChunk chunk = dirty.chunk;
+            Heightmap.primeHeightmaps(chunk, HEIGHTMAPS);
+            chunk.setUnsaved(true);
+            DirtyChunkBatch.add(level, chunk, dirty.touchedSections, dirty.wasEmpty, dirty.lightChecks);
+        }
+        
+        LOGGER.debug("Finished bulk write in {}: {} chunks changed", level.dimension().location(), changedChunks);
+        dirtyChunks.clear();
+        cachedChunkKey = Long.MIN_VALUE;
+        cachedChunk = null;
+        return changedChunks;
+    }
+    
+    /**
+     * Tracks which sections of a chunk were written to, whether they were empty beforehand,
+     * and which of their positions changed in a way that affects light.
+     */
+    private static class DirtyChunk {
+        final LevelChunk chunk;
+        final boolean[] touchedSections;
+        final boolean[] wasEmpty;
+        // Per section, one bit per position, indexed y, z, x like section storage; null until needed
+        final long[][] lightChecks;
+        boolean changed;
+        
+        DirtyChunk(LevelChunk chunk) {
+            this.chunk = chunk;
+            this.touchedSections = new boolean[chunk.getSectionsCount()];
+            this.wasEmpty = new boolean[chunk.getSectionsCount()];
+            this.lightChecks = new long[chunk.getSectionsCount()][];
+        }
+        
+        void markLightCheck(int sectionIndex, int x, int y, int z) {
+            long[] bits = lightChecks[sectionIndex];
+            if (bits == null) {
+                bits = new long[LIGHT_CHECK_WORDS];
+                lightChecks[sectionIndex] = bits;
+            }
+            int index = lightCheckIndex(x, y, z);
+            bits[index >> 6] |= 1L << index;
+        }
+        
+        static boolean isSet(long[] bits, int x, int y, int z) {
+            int index = lightCheckIndex(x, y, z);
+            return (bits[index >> 6] & (1L << index)) != 0;
+        }
+        
+        void markSection(int sectionIndex, boolean emptyBefore) {
+            if (!touchedSections[sectionIndex]) {
+                touchedSections[sectionIndex] = true;
+                wasEmpty[sectionIndex] = emptyBefore;
+            }
+            changed = true;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.ThreadedLevelLightEngine;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.neoforged.bus.api.EventPriority;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the chunks changed by bulk edits and relights and resends them at the end of the tick.
+ * A chunk written by several edits in the same tick, like a barrier refresh and a paste,
+ * still gets a single batch of light checks and a single full chunk packet per tracking player
+ * instead of one block update per changed block. Light is rechecked at every position whose
+ * change affects it, so light the new blocks now block is taken away as well as spread.
+ */
+@EventBusSubscriber
+public class DirtyChunkBatch {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private static final Map<ResourceKey<Level>, LevelBatch> batches = new HashMap<>();
+    
+    /**
+     * Queues a chunk for relighting and resending.
+     * @param touchedSections sections that were written to
+     * @param wasEmpty whether each touched section held only air before it was written to
+     * @param lightChecks per section, the positions whose light needs rechecking, see
+     *                    {@link ChunkSectionWriter#lightCheckIndex}; null for sections without any
+     */
+    static void add(ServerLevel level, LevelChunk chunk, boolean[] touchedSections, boolean[] wasEmpty, long[][] lightChecks) {
+        LevelBatch batch = batches.computeIfAbsent(level.dimension(), key -> new LevelBatch(level));
+        PendingChunk pending = batch.chunks.get(chunk.getPos().toLong());
+        if (pending == null || pending.chunk != chunk) {
+            pending = new PendingChunk(chunk);
+            batch.chunks.put(chunk.getPos().toLong(), pending);
+        }
+        
+        // Keep the emptiness from before the first edit, so only the net change is reported
+        for (int i = 0; i < touchedSections.length; i++) {
+            if (touchedSections[i] && !pending.touchedSections[i]) {
+                pending.touchedSections[i] = true;
+                pending.wasEmpty[i] = wasEmpty[i];
+            }
+            if (lightChecks[i] != null) {
+                if (pending.lightChecks[i] == null) {
+                    pending.lightChecks[i] = lightChecks[i].clone();
+                } else {
+                    for (int word = 0; word < ChunkSectionWriter.LIGHT_CHECK_WORDS; word++) {
+                        pending.lightChecks[i][word] |= lightChecks[i][word];
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return number of chunks waiting for the end of the tick
+     */
+    public static int getPendingCount() {
+        int count = 0;
+        for (LevelBatch batch : batches.values()) {
+            count += batch.chunks.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Relights and resends every queued chunk now.
+     */
+    public static void flush(MinecraftServer server) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        
+        for (LevelBatch batch : batches.values()) {
+            if (!batch.chunks.isEmpty()) {
+                batch.flush(server);
+            }
+        }
+        batches.clear();
+    }
+    
+    // Runs after the other end-of-tick handlers so edits they make are flushed in the same tick
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onServerTick(ServerTickEvent.Post event) {
+        flush(event.getServer());
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        // Get edits from the final tick lit before the chunks are saved
+        flush(event.getServer());
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        batches.clear();
+    }
+    
+    /**
+     * The queued chunks of one level.
+     */
+    private static class LevelBatch {
+        final ServerLevel level;
+        final Long2ObjectLinkedOpenHashMap<PendingChunk> chunks = new Long2ObjectLinkedOpenHashMap<>();
+        
+        LevelBatch(ServerLevel level) {
+            this.level = level;
+        }
+        
+        void flush(MinecraftServer server) {
+            ThreadedLevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+            int flushed = 0;
+            
+            for (PendingChunk pending : chunks.values()) {
+                LevelChunk chunk = pending.chunk;
+                ChunkPos chunkPos = chunk.getPos();
+                
+                // Unloaded since the edit; it will be lit and sent fresh when it loads again
+                if (level.getChunkSource().getChunkNow(chunkPos.x, chunkPos.z) != chunk) {
+                    continue;
+                }
+                flushed++;
+                
+                // Tell the light engine about sections that became empty or non-empty
+                for (int i = 0; i < pending.touchedSections.length; i++) {
+                    if (!pending.touchedSections[i]) {
+                        continue;
+                    }
+                    boolean isEmpty = chunk.getSection(i).hasOnlyAir();
+                    if (isEmpty != pending.wasEmpty[i]) {
+                        lightEngine.updateSectionStatus(SectionPos.of(chunkPos, level.getSectionYFromSectionIndex(i)), isEmpty);
+                    }
+                }
+                
+                queueLightChecks(lightEngine, pending);
+                
+                // The chunk is lit already, so this only waits for the checks queued above to run
+                lightEngine.lightChunk(chunk, true)
+                    .thenRunAsync(() -> sendChunk(chunk), server);
+            }
+            
+            lightEngine.tryScheduleUpdate();
+            LOGGER.debug("Relit and resent {} chunks in {}", flushed, level.dimension().location());
+        }
+        
+        private void queueLightChecks(ThreadedLevelLightEngine lightEngine, PendingChunk pending) {
+            ChunkPos chunkPos = pending.chunk.getPos();
+            for (int i = 0; i < pending.lightChecks.length; i++) {
+                long[] bits = pending.lightChecks[i];
+                if (bits == null) {
+                    continue;
+                }
+                int baseY = SectionPos.sectionToBlockCoord(level.getSectionYFromSectionIndex(i));
+                for (int word = 0; word < bits.length; word++) {
+                    long remaining = bits[word];
+                    while (remaining != 0) {
+                        int index = (word << 6) | Long.numberOfTrailingZeros(remaining);
+                        remaining &= remaining - 1;
+                        lightEngine.checkBlock(new BlockPos(
+                            chunkPos.getMinBlockX() + (index & 15),
+                            baseY + (index >> 8),
+                            chunkPos.getMinBlockZ() + ((index >> 4) & 15)));
+                    }
+                }
+            }
+        }
+        
+        private void sendChunk(LevelChunk chunk) {
+            var players = level.getChunkSource().chunkMap.getPlayers(chunk.getPos(), false);
+            if (players.isEmpty()) {
+                return;
+            }
+            
+            ClientboundLevelChunkWithLightPacket packet = new ClientboundLevelChunkWithLightPacket(
+                chunk, level.getLightEngine(), null, null);
+            for (ServerPlayer player : players) {
+                player.connection.send(packet);
+            }
+        }
+    }
+    
+    /**
+     * A chunk waiting to be relit, with the sections edited since it was queued.
+     */
+    private static class PendingChunk {
+        final LevelChunk chunk;
+        final boolean[] touchedSections;
+        final boolean[] wasEmpty;
+        final long[][] lightChecks;
+        
+        PendingChunk(LevelChunk chunk) {
+            this.chunk = chunk;
+            this.touchedSections = new boolean[chunk.getSectionsCount()];
+            this.wasEmpty = new boolean[chunk.getSectionsCount()];
+            this.lightChecks = new long[chunk.getSectionsCount()][];
+        }
+    }
+}
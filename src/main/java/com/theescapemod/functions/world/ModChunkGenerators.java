@@ -0,0 +1,25 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.serialization.MapCodec;
+import com.theescapemod.functions.TheEscapeModFunctions;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.neoforged.bus.api.IEventBus;
+import net.neoforged.neoforge.registries.DeferredRegister;
+
+import java.util.function.Supplier;
+
+/**
+ * Registry for the mod's chunk generator types.
+ */
+public class ModChunkGenerators {
+    public static final DeferredRegister<MapCodec<? extends ChunkGenerator>> CHUNK_GENERATORS =
+            DeferredRegister.create(Registries.CHUNK_GENERATOR, TheEscapeModFunctions.MODID);
+
+    public static final Supplier<MapCodec<VoidChunkGenerator>> VOID = CHUNK_GENERATORS.register("void",
+            () -> VoidChunkGenerator.CODEC);
+
+    public static void register(IEventBus eventBus) {
+        CHUNK_GENERATORS.register(eventBus);
+    }
+}
@@ -0,0 +1,245 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.TheEscapeModFunctions;
+import com.theescapemod.functions.dimension.DimensionConfig;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enforces dimension perimeters without placing any blocks.
+ * Used for dimensions configured with the "virtual" barrier mode, where a physical
+ * wall would mean millions of stored barrier blocks. Each tick, players and the
+ * entities indexed as being near the edge are clamped back inside the wall's shape.
+ */
+@EventBusSubscriber
+public class VirtualBarrierManager {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    // Entities within this many blocks of the wall are tracked every tick
+    private static final int EDGE_MARGIN = 64;
+    // How often the near-edge entity index is rebuilt
+    private static final int INDEX_REFRESH_TICKS = 10;
+    // Wall chunks are grouped into cells of this many chunks per side for entity queries
+    private static final int INDEX_CELL_CHUNKS = 4;
+    
+    private static final Map<ResourceKey<Level>, EdgeIndex> virtualDimensions = new HashMap<>();
+    private static int tickCounter = 0;
+    
+    /**
+     * Enables the virtual wall for every configured dimension that uses it.
+     */
+    public static void enableVirtualBarriers(MinecraftServer server, Map<String, DimensionConfig> configs) {
+        virtualDimensions.clear();
+        
+        for (DimensionConfig config : configs.values()) {
+            if (!config.isVirtualBarrier()) {
+                continue;
+            }
+            
+            ResourceLocation dimensionLocation = ResourceLocation.fromNamespaceAndPath(
+                TheEscapeModFunctions.MODID, config.getName());
+            ResourceKey<Level> dimensionKey = ResourceKey.create(
+                net.minecraft.core.registries.Registries.DIMENSION, dimensionLocation);
+            
+            if (server.getLevel(dimensionKey) == null) {
+                LOGGER.warn("Could not find dimension '{}' to enable its virtual barrier", config.getName());
+                continue;
+            }
+            
+            BarrierShape shape = BarrierShape.fromConfig(config);
+            virtualDimensions.put(dimensionKey, new EdgeIndex(BarrierRaster.of(shape)));
+            LOGGER.info("Virtual barrier enabled for dimension '{}' with shape {}", config.getName(), shape);
+        }
+    }
+    
+    /**
+     * @return true if the dimension is enforced by a virtual wall
+     */
+    public static boolean isVirtual(ResourceKey<Level> dimensionKey) {
+        return virtualDimensions.containsKey(dimensionKey);
+    }
+    
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        if (virtualDimensions.isEmpty()) {
+            return;
+        }
+        
+        tickCounter++;
+        boolean refreshIndex = tickCounter >= INDEX_REFRESH_TICKS;
+        if (refreshIndex) {
+            tickCounter = 0;
+        }
+        
+        for (Map.Entry<ResourceKey<Level>, EdgeIndex> entry : virtualDimensions.entrySet()) {
+            ServerLevel level = event.getServer().getLevel(entry.getKey());
+            if (level == null) {
+                continue;
+            }
+            
+            EdgeIndex index = entry.getValue();
+            if (refreshIndex) {
+                index.rebuild(level);
+            }
+            
+            // Players are few and can move fast, so they are always checked
+            for (ServerPlayer player : level.players()) {
+                index.clamp(player.isPassenger() ? player.getRootVehicle() : player);
+            }
+            for (Entity entity : index.entities) {
+                if (!entity.isRemoved() && !(entity instanceof ServerPlayer) && entity.level() == level) {
+                    index.clamp(entity);
+                }
+            }
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        virtualDimensions.clear();
+    }
+    
+    /**
+     * Spatial index of the entities close to one dimension's wall.
+     * Built from boxes around the cells the wall passes through, so the level's entity
+     * sections do the filtering and entities in the interior are never visited.
+     */
+    private static class EdgeIndex {
+        final BarrierRaster raster;
+        final AABB[] cells;
+        final Set<Entity> entities = new ReferenceLinkedOpenHashSet<>();
+        
+        EdgeIndex(BarrierRaster raster) {
+            this.raster = raster;
+            
+            LongSet cellKeys = new LongOpenHashSet();
+            for (long chunkPos : raster.getWallChunks()) {
+                cellKeys.add(ChunkPos.asLong(
+                    Math.floorDiv(ChunkPos.getX(chunkPos), INDEX_CELL_CHUNKS),
+                    Math.floorDiv(ChunkPos.getZ(chunkPos), INDEX_CELL_CHUNKS)));
+            }
+            
+            int cellSize = INDEX_CELL_CHUNKS * 16;
+            this.cells = new AABB[cellKeys.size()];
+            int i = 0;
+            for (long cellKey : cellKeys) {
+                double minX = ChunkPos.getX(cellKey) * cellSize;
+                double minZ = ChunkPos.getZ(cellKey) * cellSize;
+                // The Y range is filled in per level when the index is rebuilt
+                cells[i++] = new AABB(minX - EDGE_MARGIN, 0, minZ - EDGE_MARGIN,
+                    minX + cellSize + EDGE_MARGIN, 0, minZ + cellSize + EDGE_MARGIN);
+            }
+        }
+        
+        void rebuild(ServerLevel level) {
+            entities.clear();
+            
+            double minY = level.getMinBuildHeight() - EDGE_MARGIN;
+            double maxY = level.getMaxBuildHeight() + EDGE_MARGIN;
+            for (AABB cell : cells) {
+                AABB box = new AABB(cell.minX, minY, cell.minZ, cell.maxX, maxY, cell.maxZ);
+                entities.addAll(level.getEntities((Entity) null, box, entity -> !entity.isPassenger()));
+            }
+        }
+        
+        /**
+         * Moves an entity back inside the wall if its bounding box crosses it.
+         * The allowed area matches the inside of the physical barrier wall of the same shape.
+         */
+        void clamp(Entity entity) {
+            if (entity.isPassenger() || entity.isSpectator()) {
+                return;
+            }
+            
+            double halfWidth = entity.getBbWidth() / 2.0;
+            double x = entity.getX();
+            double z = entity.getZ();
+            double clampedX;
+            double clampedZ;
+            
+            switch (raster.getShape()) {
+                case BarrierShape.Square square -> {
+                    double min = -square.radius() + 1 + halfWidth;
+                    double max = square.radius() - halfWidth;
+                    clampedX = Math.max(min, Math.min(max, x));
+                    clampedZ = Math.max(min, Math.min(max, z));
+                }
+                case BarrierShape.Circle circle -> {
+                    // One block short of the radius keeps the box clear of the stepped wall columns
+                    double max = Math.max(0, circle.radius() - 1 - halfWidth);
+                    double distance = Math.sqrt(x * x + z * z);
+                    double scale = distance > max ? max / distance : 1;
+                    clampedX = x * scale;
+                    clampedZ = z * scale;
+                }
+                default -> {
+                    // Arbitrary outlines have no closed-form nearest point, so undo the last move instead
+                    if (isInside(x, z, halfWidth)) {
+                        return;
+                    }
+                    if (!isInside(entity.xo, entity.zo, halfWidth)) {
+                        // Already outside before this tick, e.g. spawned there; nothing safe to go back to
+                        return;
+                    }
+                    clampedX = entity.xo;
+                    clampedZ = entity.zo;
+                }
+            }
+            
+            if (clampedX == x && clampedZ == z) {
+                return;
+            }
+            
+            // Stop outward movement so the entity doesn't keep pushing into the wall
+            Vec3 motion = entity.getDeltaMovement();
+            entity.setDeltaMovement(clampedX != x ? 0 : motion.x, motion.y, clampedZ != z ? 0 : motion.z);
+            
+            if (entity instanceof ServerPlayer player) {
+                player.connection.teleport(clampedX, player.getY(), clampedZ, player.getYRot(), player.getXRot());
+            } else {
+                entity.teleportTo(clampedX, entity.getY(), clampedZ);
+            }
+        }
+        
+        /**
+         * Checks that every column under a bounding box footprint is inside the shape and off the wall.
+         */
+        private boolean isInside(double x, double z, double halfWidth) {
+            int minX = Mth.floor(x - halfWidth);
+            int maxX = Mth.floor(x + halfWidth - 1.0E-7);
+            int minZ = Mth.floor(z - halfWidth);
+            int maxZ = Mth.floor(z + halfWidth - 1.0E-7);
+            BarrierShape shape = raster.getShape();
+            for (int columnX = minX; columnX <= maxX; columnX++) {
+                for (int columnZ = minZ; columnZ <= maxZ; columnZ++) {
+                    if (!shape.contains(columnX, columnZ) || raster.isWallColumn(columnX, columnZ)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.logging.LogUtils;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.Util;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.server.level.WorldGenRegion;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.NoiseColumn;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.WorldGenLevel;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.biome.FixedBiomeSource;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.levelgen.GenerationStep;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.minecraft.world.level.levelgen.blending.Blender;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Generates empty chunks for TEMF void dimensions, with a single fixed biome and no features.
+ * {@link Placement}s registered on the generator are written into each chunk during its noise
+ * step, so builds in a void dimension cost nothing until a chunk actually generates, and are
+ * lit along with the rest of the chunk.
+ */
+public class VoidChunkGenerator extends ChunkGenerator {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    public static final MapCodec<VoidChunkGenerator> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+        Biome.CODEC.fieldOf("biome").forGetter(generator -> generator.biome)
+    ).apply(instance, instance.stable(VoidChunkGenerator::new)));
+    
+    private final Holder<Biome> biome;
+    private final List<Placement> placements = new CopyOnWriteArrayList<>();
+    
+    public VoidChunkGenerator(Holder<Biome> biome) {
+        super(new FixedBiomeSource(biome));
+        this.biome = biome;
+    }
+    
+    /**
+     * Blocks to write into chunks as they generate.
+     * Methods other than {@link #whenReady()} are called from worldgen threads.
+     */
+    public interface Placement {
+        
+        /**
+         * @return true if the placement has blocks in the chunk
+         */
+        boolean intersects(ChunkPos chunkPos);
+        
+        /**
+         * Completes once the placement can write; chunks that need it wait for this.
+         */
+        CompletableFuture<?> whenReady();
+        
+        /**
+         * Writes the placement's blocks that fall inside the chunk.
+         */
+        void place(ChunkAccess chunk);
+    }
+    
+    /**
+     * Adds a placement for chunks that generate from now on. Later placements are written over earlier ones.
+     */
+    public void addPlacement(Placement placement) {
+        placements.add(placement);
+    }
+    
+    public void clearPlacements() {
+        placements.clear();
+    }
+    
+    @Override
+    protected MapCodec<? extends ChunkGenerator> codec() {
+        return CODEC;
+    }
+    
+    @Override
+    public CompletableFuture<ChunkAccess> fillFromNoise(Blender blender, RandomState randomState,
+                                                        StructureManager structureManager, ChunkAccess chunk) {
+        List<Placement> matching = new ArrayList<>();
+        for (Placement placement : placements) {
+            if (placement.intersects(chunk.getPos())) {
+                matching.add(placement);
+            }
+        }
+        if (matching.isEmpty()) {
+            return CompletableFuture.completedFuture(chunk);
+        }
+        
+        CompletableFuture<?>[] ready = new CompletableFuture<?>[matching.size()];
+        for (int i = 0; i < ready.length; i++) {
+            ready[i] = matching.get(i).whenReady();
+        }
+        
+        // A placement that failed to load is left out rather than failing the chunk
+        return CompletableFuture.allOf(ready).handleAsync((ignored, error) -> {
+            for (int i = 0; i < ready.length; i++) {
+                if (ready[i].isCompletedExceptionally()) {
+                    continue;
+                }
+                try {
+                    matching.get(i).place(chunk);
+                } catch (Exception e) {
+                    LOGGER.error("Failed to place blocks in generating chunk {}: {}", chunk.getPos(), e.getMessage(), e);
+                }
+            }
+            return chunk;
+        }, Util.backgroundExecutor());
+    }
+    
+    @Override
+    public void applyBiomeDecoration(WorldGenLevel level, ChunkAccess chunk, StructureManager structureManager) {
+        // No features, not even the void biome's start platform
+    }
+    
+    @Override
+    public void applyCarvers(WorldGenRegion level, long seed, RandomState random, BiomeManager biomeManager,
+                             StructureManager structureManager, ChunkAccess chunk, GenerationStep.Carving step) {
+    }
+    
+    @Override
+    public void buildSurface(WorldGenRegion level, StructureManager structureManager, RandomState random, ChunkAccess chunk) {
+    }
+    
+    @Override
+    public void spawnOriginalMobs(WorldGenRegion level) {
+    }
+    
+    @Override
+    public int getGenDepth() {
+        return 384;
+    }
+    
+    @Override
+    public int getSeaLevel() {
+        return -63;
+    }
+    
+    @Override
+    public int getMinY() {
+        return -64;
+    }
+    
+    @Override
+    public int getBaseHeight(int x, int z, Heightmap.Types type, LevelHeightAccessor level, RandomState random) {
+        return level.getMinBuildHeight();
+    }
+    
+    @Override
+    public NoiseColumn getBaseColumn(int x, int z, LevelHeightAccessor level, RandomState random) {
+        BlockState[] column = new BlockState[level.getHeight()];
+        Arrays.fill(column, Blocks.AIR.defaultBlockState());
+        return new NoiseColumn(level.getMinBuildHeight(), column);
+    }
+    
+    @Override
+    public void addDebugScreenInfo(List<String> info, RandomState random, BlockPos pos) {
+        info.add("TEMF void generator: " + placements.size() + " placements");
+    }
+}
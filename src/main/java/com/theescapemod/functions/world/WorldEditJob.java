@@ -0,0 +1,47 @@
+package com.theescapemod.functions.world;
+
+/**
+ * A long-running world edit that is advanced a little every server tick
+ * by {@link WorldEditJobScheduler}, so it never blocks a single tick for long.
+ */
+public interface WorldEditJob {
+    
+    /**
+     * Short human readable description, shown in command output.
+     */
+    String getDescription();
+    
+    /**
+     * Does as much work as fits before the deadline.
+     * @param deadlineNanos {@link System#nanoTime()} value at which the job must return
+     * @return true once the job has finished
+     */
+    boolean tick(long deadlineNanos);
+    
+    /**
+     * @return completed fraction of the job, from 0 to 1
+     */
+    float getProgress();
+    
+    /**
+     * Called once when the job finishes or is cancelled, so it can release what it holds.
+     */
+    default void onStopped(boolean cancelled) {
+    }
+    
+    /**
+     * Called instead of {@link #onStopped} when {@link #tick} threw, so the job is not taken
+     * for finished. By default it is stopped like a cancelled job.
+     */
+    default void onFailed(Exception error) {
+        onStopped(true);
+    }
+    
+    /**
+     * Called instead of {@link #onStopped} when the server stops while the job is still running.
+     * Jobs that can resume after a restart keep their saved progress here.
+     */
+    default void onShutdown() {
+        onStopped(true);
+    }
+}
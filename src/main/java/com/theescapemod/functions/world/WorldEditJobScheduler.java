@@ -0,0 +1,145 @@
+package com.theescapemod.functions.world;
+
+import com.mojang.logging.LogUtils;
+import com.theescapemod.functions.config.TEMFConfig;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link WorldEditJob}s on the server thread within a fixed time budget per tick.
+ * Jobs share the budget in submission order; whatever a job can't finish in one tick
+ * is picked up again on the next. A job may be queued to wait for another to end first.
+ */
+@EventBusSubscriber
+public class WorldEditJobScheduler {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    
+    private static final Map<Integer, WorldEditJob> jobs = new LinkedHashMap<>();
+    // The job each waiting job has to wait for, keyed by the waiting job's id
+    private static final Map<Integer, Integer> predecessors = new HashMap<>();
+    private static int nextJobId = 1;
+    
+    /**
+     * Queues a job to start on the next tick.
+     * @return the id used to look up or cancel the job
+     */
+    public static int submit(WorldEditJob job) {
+        int id = nextJobId++;
+        jobs.put(id, job);
+        LOGGER.info("Queued job #{}: {}", id, job.getDescription());
+        return id;
+    }
+    
+    /**
+     * Queues a job that is only ticked once the job with the given id has finished or been
+     * cancelled, so jobs writing the same blocks keep their order.
+     * @return the id used to look up or cancel the job
+     */
+    public static int submitAfter(int previousId, WorldEditJob job) {
+        int id = submit(job);
+        if (jobs.containsKey(previousId)) {
+            predecessors.put(id, previousId);
+        }
+        return id;
+    }
+    
+    /**
+     * Cancels a running job. Work already done is kept.
+     * @return true if the job was running
+     */
+    public static boolean cancel(int id) {
+        WorldEditJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        predecessors.remove(id);
+        job.onStopped(true);
+        LOGGER.info("Cancelled job #{}: {}", id, job.getDescription());
+        return true;
+    }
+    
+    public static WorldEditJob getJob(int id) {
+        return jobs.get(id);
+    }
+    
+    /**
+     * @return running jobs keyed by id, in submission order
+     */
+    public static Map<Integer, WorldEditJob> getJobs() {
+        return new LinkedHashMap<>(jobs);
+    }
+    
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        
+        long deadline = System.nanoTime() + TEMFConfig.JOB_TICK_BUDGET_MS.get() * 1_000_000L;
+        List<Integer> finished = new ArrayList<>();
+        Map<Integer, Exception> failed = new LinkedHashMap<>();
+        
+        // Copy so jobs may submit follow-up jobs while running
+        for (Map.Entry<Integer, WorldEditJob> entry : new ArrayList<>(jobs.entrySet())) {
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            
+            Integer previous = predecessors.get(entry.getKey());
+            if (previous != null) {
+                if (jobs.containsKey(previous)) {
+                    continue;
+                }
+                predecessors.remove(entry.getKey());
+            }
+            
+            WorldEditJob job = entry.getValue();
+            try {
+                if (job.tick(deadline)) {
+                    finished.add(entry.getKey());
+                }
+            } catch (Exception e) {
+                LOGGER.error("Job #{} ({}) failed: {}", entry.getKey(), job.getDescription(), e.getMessage(), e);
+                failed.put(entry.getKey(), e);
+            }
+        }
+        
+        for (Map.Entry<Integer, Exception> entry : failed.entrySet()) {
+            predecessors.remove(entry.getKey());
+            WorldEditJob job = jobs.remove(entry.getKey());
+            if (job != null) {
+                job.onFailed(entry.getValue());
+            }
+        }
+        
+        for (Integer id : finished) {
+            predecessors.remove(id);
+            WorldEditJob job = jobs.remove(id);
+            if (job != null) {
+                job.onStopped(false);
+                LOGGER.info("Finished job #{}: {}", id, job.getDescription());
+            }
+        }
+    }
+    
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        predecessors.clear();
+        Iterator<WorldEditJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            WorldEditJob job = iterator.next();
+            iterator.remove();
+            job.onShutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.theescapemod.functions.schematic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VarIntDecoderTest {
+    @Test
+    void decodesSingleByteValues() {
+        int[] out = new int[3];
+        assertEquals(3, VarIntDecoder.decode(new byte[] {0, 1, 127}, out));
+        assertArrayEquals(new int[] {0, 1, 127}, out);
+    }
+    
+    @Test
+    void decodesMultiByteValues() {
+        byte[] data = {
+            (byte) 0x80, 0x01,                                       // 128
+            (byte) 0xFF, 0x7F,                                       // 16383
+            (byte) 0x80, (byte) 0x80, 0x01,                          // 16384
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 // Integer.MAX_VALUE
+        };
+        int[] out = new int[4];
+        assertEquals(4, VarIntDecoder.decode(data, out));
+        assertArrayEquals(new int[] {128, 16383, 16384, Integer.MAX_VALUE}, out);
+    }
+    
+    @Test
+    void stopsAtTruncatedValue() {
+        int[] out = new int[3];
+        assertEquals(1, VarIntDecoder.decode(new byte[] {5, (byte) 0x80}, out));
+        assertEquals(5, out[0]);
+    }
+    
+    @Test
+    void stopsAtValueLongerThanFiveBytes() {
+        byte[] data = {3, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 4};
+        int[] out = new int[3];
+        assertEquals(1, VarIntDecoder.decode(data, out));
+        assertEquals(3, out[0]);
+    }
+    
+    @Test
+    void decodesNoMoreThanRequested() {
+        int[] out = new int[2];
+        assertEquals(2, VarIntDecoder.decode(new byte[] {1, 2, 3}, out));
+        assertArrayEquals(new int[] {1, 2}, out);
+    }
+    
+    @Test
+    void cursorContinuesWhereItStopped() {
+        byte[] data = {1, (byte) 0x80, 0x01, 2, 3};
+        VarIntDecoder.Cursor cursor = new VarIntDecoder.Cursor(data);
+        int[] out = new int[2];
+        
+        assertEquals(2, cursor.next(out, 2));
+        assertArrayEquals(new int[] {1, 128}, out);
+        assertEquals(2, cursor.next(out, 2));
+        assertArrayEquals(new int[] {2, 3}, out);
+        assertEquals(0, cursor.next(out, 2));
+    }
+    
+    @Test
+    void slicedDecodingMatchesWholeDecoding() {
+        Random random = new Random(42);
+        int[] values = new int[100_000];
+        byte[] buffer = new byte[values.length * 5];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            // Mostly small ids, like real palettes, with some larger ones mixed in
+            int value = random.nextInt(10) == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(128);
+            values[i] = value;
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+        byte[] data = Arrays.copyOf(buffer, length);
+        
+        int[] whole = new int[values.length];
+        assertEquals(values.length, VarIntDecoder.decode(data, whole));
+        assertArrayEquals(values, whole);
+        
+        VarIntDecoder.Cursor cursor = new VarIntDecoder.Cursor(data);
+        int[] row = new int[37];
+        int[] sliced = new int[values.length];
+        int total = 0;
+        int decoded;
+        while ((decoded = cursor.next(row, row.length)) > 0) {
+            System.arraycopy(row, 0, sliced, total, decoded);
+            total += decoded;
+        }
+        assertEquals(values.length, total);
+        assertArrayEquals(values, sliced);
+    }
+    
+    @Test
+    void matchesPerByteLoopOnMultiMillionBlockData() {
+        // A 256 x 128 x 256 build, with a palette large enough for some two-byte ids
+        Random random = new Random(7);
+        int[] values = new int[256 * 128 * 256];
+        byte[] buffer = new byte[values.length * 2];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            int value = random.nextInt(8) == 0 ? random.nextInt(4096) : random.nextInt(64);
+            values[i] = value;
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+        byte[] data = Arrays.copyOf(buffer, length);
+        
+        int[] decoded = new int[values.length];
+        int[] expected = new int[values.length];
+        long decoderNanos = Long.MAX_VALUE;
+        long loopNanos = Long.MAX_VALUE;
+        // Best of a few runs, so the JIT has compiled both before the last ones
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            assertEquals(values.length, VarIntDecoder.decode(data, decoded));
+            decoderNanos = Math.min(decoderNanos, System.nanoTime() - start);
+            
+            start = System.nanoTime();
+            assertEquals(values.length, decodePerByte(data, expected));
+            loopNanos = Math.min(loopNanos, System.nanoTime() - start);
+        }
+        assertArrayEquals(values, expected);
+        assertArrayEquals(expected, decoded);
+        
+        System.out.printf("Decoded %d block ids in %.1f ms, the per-byte loop took %.1f ms%n",
+            values.length, decoderNanos / 1.0E6, loopNanos / 1.0E6);
+        // Generous, so only a real regression fails on a busy machine
+        assertTrue(decoderNanos <= loopNanos * 2, "VarIntDecoder is much slower than the per-byte loop it replaced");
+    }
+    
+    /**
+     * The loop SchematicReader decoded block data with before VarIntDecoder.
+     */
+    private static int decodePerByte(byte[] data, int[] out) {
+        int dataIndex = 0;
+        int count = 0;
+        while (count < out.length && dataIndex < data.length) {
+            int value = 0;
+            int position = 0;
+            byte currentByte;
+            do {
+                if (dataIndex >= data.length) {
+                    break;
+                }
+                currentByte = data[dataIndex++];
+                value |= (currentByte & 0x7F) << position;
+                position += 7;
+            } while ((currentByte & 0x80) != 0 && position < 32);
+            out[count++] = value;
+        }
+        return count;
+    }
+}